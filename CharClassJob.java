@@ -0,0 +1,38 @@
+/**
+ * Number of lowercase letters, uppercase letters and digits in the words of all the input files, most frequent first.
+ */
+class CharClassJob implements Job<String, LongCount> {
+    private static final String[] CLASSES = {"lowercase", "uppercase", "digit"};
+
+    @Override
+    public Mapper<String, LongCount> newMapper(String filename) {
+        return new Mapper<String, LongCount>() {
+            private final long[] counts = new long[CLASSES.length];
+
+            @Override
+            public void word(FragmentReader reader, long wordStart, long wordEnd) {
+                for (long pos = wordStart; pos < wordEnd; pos++) {
+                    int b = reader.get(pos);
+                    counts[b >= 'a' ? 0 : b >= 'A' ? 1 : 2]++;
+                }
+            }
+
+            @Override
+            public void finish(Emitter<String, LongCount> out) {
+                for (int i = 0; i < CLASSES.length; i++) {
+                    out.emit(CLASSES[i], new LongCount(counts[i]));
+                }
+            }
+        };
+    }
+
+    @Override
+    public Combiner<LongCount> getCombiner() {
+        return LongCount.SUM;
+    }
+
+    @Override
+    public Reducer<String, LongCount> getReducer() {
+        return (name, count, out) -> out.collect(count.get(), name + "," + count.get());
+    }
+}
@@ -0,0 +1,15 @@
+/**
+ * Merges two intermediate values of the same key, on the map side for the records of one fragment and on the reduce
+ * side for the records of all fragments. Values are usually mutable accumulators, so the first one can be updated and
+ * returned instead of allocating a new one.
+ * @param <V> - type of the values.
+ */
+interface Combiner<V> {
+
+    /**
+     * @param into - value combined so far, which may be updated.
+     * @param other - value to add to it, which must not be kept.
+     * @return - the combined value.
+     */
+    V combine(V into, V other);
+}
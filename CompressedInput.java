@@ -0,0 +1,401 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+
+/**
+ * Gzip-compressed input file, recognized by its .gz or .bgz extension. Positions and sizes of a compressed file are
+ * always those of its uncompressed content.
+ *
+ * A file made only of BGZF blocks, the gzip members of at most 64 KB written by bgzip, can be split: the headers of
+ * its blocks are indexed once, and each fragment decompresses only the blocks it needs into a pooled buffer, so the
+ * blocks of a file are decompressed in parallel by the Map tasks of its fragments. Any other gzip file, with one or
+ * several members, is mapped whole by a single task, which tokenizes the bytes as they are decompressed.
+ */
+class CompressedInput {
+    /**
+     * Largest size of a BGZF block, compressed or not.
+     */
+    static final int BLOCK_SIZE = 65536;
+    private static final int BLOCK_DATA_SIZE = 65280;
+    private static final int HEADER_SIZE = 18;
+    private static final int STREAM_BUFFER_SIZE = 1 << 20;
+    private static final int POOL_SIZE = 4 * Runtime.getRuntime().availableProcessors();
+    private static final ConcurrentHashMap<String, CompressedInput> inputs = new ConcurrentHashMap<>();
+    private static final ConcurrentLinkedQueue<ByteBuffer> buffers = new ConcurrentLinkedQueue<>();
+
+    private final String filename;
+    private final FragmentReader file;
+    private final long size;
+    private long[] blockOffsets;
+    private int[] blockLengths;
+    private long[] blockStarts;
+    private int blocks;
+
+    private CompressedInput(String filename) throws IOException {
+        this.filename = filename;
+        this.file = FragmentReader.forFile(filename);
+        this.size = index() ? blockStarts[blocks] : streamSize();
+    }
+
+    /**
+     * @param filename - name of a file.
+     * @return - true if the file is read as a compressed file.
+     */
+    static boolean isCompressed(String filename) {
+        return filename.endsWith(".gz") || filename.endsWith(".bgz");
+    }
+
+    /**
+     * Function that returns the shared index of a compressed file, reading it on first use.
+     * @param filename - name of the file.
+     * @return - the compressed file, or null if the file is not compressed.
+     * @throws IOException
+     */
+    static CompressedInput forFile(String filename) throws IOException {
+        if (!isCompressed(filename)) {
+            return null;
+        }
+        try {
+            return inputs.computeIfAbsent(filename, name -> {
+                try {
+                    return new CompressedInput(name);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * @param filename - name of a file.
+     * @return - false if the file is compressed as a single stream and must be mapped whole by scanStream.
+     * @throws IOException
+     */
+    static boolean isSplittable(String filename) throws IOException {
+        CompressedInput input = forFile(filename);
+        return input == null || input.isSplittable();
+    }
+
+    /**
+     * Function that drops the shared index of a file once no more fragments of it will be read.
+     * @param filename - name of the file.
+     */
+    static void release(String filename) {
+        inputs.remove(filename);
+    }
+
+    /**
+     * Function that drops all shared indexes.
+     */
+    static void releaseAll() {
+        inputs.clear();
+    }
+
+    /**
+     * @return - size of the uncompressed content. It is exact for a splittable file; otherwise it is the size stored
+     * in the last gzip member, which is only a hint.
+     */
+    long getSize() {
+        return size;
+    }
+
+    boolean isSplittable() {
+        return blockOffsets != null;
+    }
+
+    /**
+     * Function that indexes the blocks of the file, skipping the empty ones such as the end of file marker.
+     * @return - true if the whole file is made of BGZF blocks.
+     */
+    private boolean index() {
+        long fileSize = file.getFileSize();
+        long[] offsets = new long[16];
+        int[] lengths = new int[16];
+        long[] starts = new long[17];
+        int count = 0;
+
+        for (long pos = 0; pos < fileSize; ) {
+            int length = blockLength(pos);
+            if (length < 0 || pos + length > fileSize) {
+                return false;
+            }
+            long blockSize = readInt(pos + length - 4);
+            if (blockSize > 0) {
+                if (count == offsets.length) {
+                    offsets = Arrays.copyOf(offsets, count * 2);
+                    lengths = Arrays.copyOf(lengths, count * 2);
+                    starts = Arrays.copyOf(starts, count * 2 + 1);
+                }
+                offsets[count] = pos;
+                lengths[count] = length;
+                starts[count + 1] = starts[count] + blockSize;
+                count++;
+            }
+            pos += length;
+        }
+
+        blockOffsets = offsets;
+        blockLengths = lengths;
+        blockStarts = starts;
+        blocks = count;
+        return true;
+    }
+
+    /**
+     * Function that reads the header of a BGZF block: a gzip member whose extra field has a BC subfield holding the
+     * size of the block minus one.
+     * @param pos - position of the block in the compressed file.
+     * @return - size of the compressed block, or -1 if there is no BGZF block at pos.
+     */
+    private int blockLength(long pos) {
+        if (pos + HEADER_SIZE > file.getFileSize() || file.get(pos) != 0x1F || file.get(pos + 1) != 0x8B
+                || file.get(pos + 2) != 8 || (file.get(pos + 3) & 4) == 0) {
+            return -1;
+        }
+        long extraEnd = pos + 12 + readShort(pos + 10);
+        for (long field = pos + 12; field + 6 <= extraEnd; field += 4 + readShort(field + 2)) {
+            if (file.get(field) == 'B' && file.get(field + 1) == 'C' && readShort(field + 2) == 2) {
+                return readShort(field + 4) + 1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return - size stored in the trailer of the last member, or the size of the compressed file if it is 0, so a
+     * non empty file is never planned without fragments.
+     */
+    private long streamSize() {
+        long fileSize = file.getFileSize();
+        long size = fileSize >= HEADER_SIZE ? readInt(fileSize - 4) : 0;
+        return size > 0 ? size : fileSize;
+    }
+
+    private int readShort(long pos) {
+        return file.get(pos) | file.get(pos + 1) << 8;
+    }
+
+    private long readInt(long pos) {
+        return readShort(pos) | (long) readShort(pos + 2) << 16;
+    }
+
+    /**
+     * Function that decompresses the blocks holding a fragment, the byte before it and the rest of the word at its
+     * end, into a pooled buffer. Blocks are added after the end of the fragment until a special character follows it,
+     * tested as FragmentReader.adjustEndPos does, so that non-ASCII letters at the end of a block are followed too.
+     * @param startPos - start position of the fragment, before adjustment.
+     * @param endPos - end position of the fragment, before adjustment.
+     * @return - a reader of the decompressed bytes, which gives back its buffer when closed.
+     * @throws IOException
+     */
+    FragmentReader read(long startPos, long endPos) throws IOException {
+        if (!isSplittable()) {
+            throw new IllegalStateException(filename + " is not made of BGZF blocks and cannot be split");
+        }
+        if (blocks == 0) {
+            return new FragmentReader(ByteBuffer.allocate(0), 0, 0, null);
+        }
+        int first = block(Math.max(startPos - 1, 0));
+        int last = block(Math.min(endPos, size - 1));
+
+        ByteBuffer buffer = acquire((int) (blockStarts[last + 1] - blockStarts[first]));
+        Inflater inflater = new Inflater(true);
+        byte[] compressed = new byte[BLOCK_SIZE];
+        try {
+            int filled = 0;
+            int scanned = (int) (Math.min(endPos, size) - blockStarts[first]);
+            for (int block = first; block < blocks; block++) {
+                if (block > last) {
+                    while (scanned < filled && !Utils.isSpecialCharacter((char) (buffer.get(scanned) & 0xFF))) {
+                        scanned++;
+                    }
+                    if (scanned < filled) {
+                        break;
+                    }
+                }
+                int blockSize = (int) (blockStarts[block + 1] - blockStarts[block]);
+                if (filled + blockSize > buffer.capacity()) {
+                    ByteBuffer larger = acquire(filled + blockSize + BLOCK_SIZE);
+                    larger.put(0, buffer, 0, filled);
+                    recycle(buffer);
+                    buffer = larger;
+                }
+                inflate(block, inflater, compressed, buffer.array(), filled);
+                filled += blockSize;
+            }
+            ByteBuffer decompressed = buffer.limit(filled);
+            return new FragmentReader(decompressed, blockStarts[first], size, () -> recycle(decompressed));
+        } catch (IOException | RuntimeException e) {
+            recycle(buffer);
+            throw e;
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * @param pos - position in the uncompressed file, lower than its size.
+     * @return - index of the block holding pos.
+     */
+    private int block(long pos) {
+        int index = Arrays.binarySearch(blockStarts, 0, blocks, pos);
+        return index >= 0 ? index : -index - 2;
+    }
+
+    /**
+     * Function that decompresses one block and checks it against the CRC32 of its trailer.
+     * @param block - index of the block.
+     * @param inflater - inflater for raw deflate data, reset before use.
+     * @param compressed - array large enough for a block, into which the compressed data is copied.
+     * @param bytes - destination array.
+     * @param offset - index in the array of the first decompressed byte.
+     * @throws IOException
+     */
+    private void inflate(int block, Inflater inflater, byte[] compressed, byte[] bytes, int offset)
+            throws IOException {
+        long pos = blockOffsets[block];
+        int extraLength = readShort(pos + 10);
+        int dataLength = blockLengths[block] - extraLength - 20;
+        int blockSize = (int) (blockStarts[block + 1] - blockStarts[block]);
+        file.get(pos + 12 + extraLength, compressed, 0, dataLength);
+
+        inflater.reset();
+        inflater.setInput(compressed, 0, dataLength);
+        int inflated = 0;
+        try {
+            while (inflated < blockSize) {
+                int count = inflater.inflate(bytes, offset + inflated, blockSize - inflated);
+                if (count == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                inflated += count;
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt block at offset " + pos + " of " + filename, e);
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(bytes, offset, inflated);
+        if (inflated != blockSize || crc.getValue() != readInt(pos + blockLengths[block] - 8)) {
+            throw new IOException("Corrupt block at offset " + pos + " of " + filename);
+        }
+    }
+
+    /**
+     * Function that tokenizes the whole file while it is decompressed, one buffer at a time. A buffer is scanned up
+     * to its last byte which is not part of a word; the word it ends with is moved to the start of the buffer and
+     * completed by the next bytes, the buffer growing if a single word fills it.
+     * @param consumer - receives the words, in the order of the file.
+     * @return - size of the uncompressed content.
+     * @throws IOException
+     */
+    long scanStream(WordScanner.WordConsumer consumer) throws IOException {
+        ByteBuffer buffer = acquire(STREAM_BUFFER_SIZE);
+        long base = 0;
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(Paths.get(filename)), BLOCK_SIZE)) {
+            int filled = 0;
+            boolean end = false;
+            while (!end) {
+                filled += in.readNBytes(buffer.array(), filled, buffer.capacity() - filled);
+                end = filled < buffer.capacity();
+                int cut = filled;
+                while (!end && cut > 0 && Utils.isWordCharacter(buffer.get(cut - 1) & 0xFF)) {
+                    cut--;
+                }
+                if (cut == 0 && !end) {
+                    ByteBuffer larger = acquire(buffer.capacity() * 2);
+                    larger.put(0, buffer, 0, filled);
+                    recycle(buffer);
+                    buffer = larger;
+                    continue;
+                }
+
+                WordScanner.scan(new FragmentReader(buffer.duplicate().limit(cut), base, base + cut, null), base,
+                        base + cut, consumer);
+                buffer.put(0, buffer, cut, filled - cut);
+                base += cut;
+                filled -= cut;
+            }
+        } finally {
+            recycle(buffer);
+        }
+        return base;
+    }
+
+    /**
+     * @param capacity - bytes needed.
+     * @return - a heap buffer from the pool if the one on top is large enough, else a new one.
+     */
+    private static ByteBuffer acquire(int capacity) {
+        ByteBuffer buffer = buffers.poll();
+        return buffer != null && buffer.capacity() >= capacity ? buffer :
+                ByteBuffer.allocate(Math.max(capacity, BLOCK_SIZE));
+    }
+
+    /**
+     * Function that puts a buffer back in the pool, unless the pool is full.
+     * @param buffer - the buffer, not used anymore.
+     */
+    private static void recycle(ByteBuffer buffer) {
+        if (buffers.size() < POOL_SIZE) {
+            buffers.offer(buffer.clear());
+        }
+    }
+
+    /**
+     * Function that compresses a stream into BGZF blocks, followed by the empty block which marks the end of the
+     * file, as bgzip does.
+     * @param in - uncompressed content.
+     * @param out - destination of the compressed file.
+     * @throws IOException
+     */
+    static void writeBgzf(InputStream in, OutputStream out) throws IOException {
+        byte[] data = new byte[BLOCK_DATA_SIZE];
+        byte[] block = new byte[BLOCK_SIZE];
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        try {
+            int length;
+            do {
+                length = in.readNBytes(data, 0, data.length);
+                deflater.reset();
+                deflater.setInput(data, 0, length);
+                deflater.finish();
+                int compressedLength = HEADER_SIZE;
+                while (!deflater.finished()) {
+                    compressedLength += deflater.deflate(block, compressedLength, block.length - 8 - compressedLength);
+                }
+                CRC32 crc = new CRC32();
+                crc.update(data, 0, length);
+
+                byte[] header = {0x1F, (byte) 0x8B, 8, 4, 0, 0, 0, 0, 0, (byte) 0xFF, 6, 0, 'B', 'C', 2, 0,
+                        (byte) (compressedLength + 7), (byte) ((compressedLength + 7) >> 8)};
+                System.arraycopy(header, 0, block, 0, HEADER_SIZE);
+                writeInt(block, compressedLength, (int) crc.getValue());
+                writeInt(block, compressedLength + 4, length);
+                out.write(block, 0, compressedLength + 8);
+            } while (length > 0);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static void writeInt(byte[] bytes, int offset, int value) {
+        for (int i = 0; i < 4; i++) {
+            bytes[offset + i] = (byte) (value >> (8 * i));
+        }
+    }
+}
@@ -0,0 +1,351 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coordinator of the distributed engine. The fragments planned from the manifest are handed out as descriptors
+ * (file, offset, length) to worker processes connected over loopback sockets; the workers map them and stream back
+ * the encoded MapResults, which are merged into the per-file Reduce states as they arrive. The workers read the files
+ * themselves, so they must see the same paths as the coordinator.
+ *
+ * Each worker announces its number of threads and is kept busy with twice as many fragments. A fragment whose worker
+ * reports a failure, closes its connection or stays silent longer than the worker timeout is handed to another worker;
+ * after MAX_ATTEMPTS failures the file of the fragment fails. A worker mapping fragments sends a HEARTBEAT every
+ * quarter of the timeout, so a long fragment is not taken for a lost worker. Without --spawn-workers or
+ * --remote-workers, one worker process is started.
+ *
+ * Protocol, with numbers written by MapResultCodec.writeVarLong:
+ *   worker: threads
+ *   coordinator: heartbeatMillis TASK id filename(UTF) startPos fragmentLength fileSize maxLongestWords ... END
+ *   worker: RESULT id bytes boundaryNanos tokenizeNanos MapResult | FAILURE id message(UTF) | HEARTBEAT, in any
+ *       order
+ * The bytes and times of a RESULT are measured by the worker and recorded in the metrics of the job.
+ */
+class DistributedCoordinator {
+    static final int END = 0;
+    static final int TASK = 1;
+    static final int RESULT = 1;
+    static final int FAILURE = 2;
+    static final int HEARTBEAT = 3;
+    private static final int MAX_ATTEMPTS = 3;
+    private static final long POLL_MILLIS = 100;
+
+    private final Manifest manifest;
+    private final JobOptions options;
+    private final int workerThreads;
+    private final JobMetrics metrics;
+    private final List<FileAggregator> states = new ArrayList<>();
+    private final BlockingDeque<Task> pending = new LinkedBlockingDeque<>();
+    private int remaining;
+    private int liveSessions;
+    private boolean accepting = true;
+
+    /**
+     * @param manifest - fragment size, names and sizes of the files to be processed.
+     * @param options - optional settings of the job.
+     * @param workerThreads - threads of each worker process started by the coordinator.
+     * @param metrics - counters of the job.
+     */
+    public DistributedCoordinator(Manifest manifest, JobOptions options, int workerThreads, JobMetrics metrics) {
+        this.manifest = manifest;
+        this.options = options;
+        this.workerThreads = workerThreads;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Function that runs the Map operations on the workers and waits until every fragment is mapped, or until no
+     * worker is left.
+     * @param reduceResults - list in which we store the results of Reduce operations.
+     * @throws IOException
+     */
+    public void run(List<Future<ReduceResult>> reduceResults) throws IOException {
+        List<String> fileNames = manifest.getFiles();
+        for (int fileId = 0; fileId < fileNames.size(); fileId++) {
+            FileAggregator state = new FileReduceState(fileNames.get(fileId), manifest.getFragmentCount(fileId),
+                    options, metrics);
+            states.add(state);
+            reduceResults.add(state.getResult());
+        }
+        long id = 0;
+        for (Manifest.Fragment fragment : manifest.plan(options.isLargestFirst())) {
+            pending.add(new Task(id++, fragment));
+        }
+        remaining = pending.size();
+        if (remaining == 0) {
+            return;
+        }
+
+        int spawnWorkers = options.getSpawnWorkers() + options.getRemoteWorkers() > 0 ? options.getSpawnWorkers() : 1;
+        ServerSocket serverSocket = new ServerSocket(options.getCoordinatorPort(), 50,
+                InetAddress.getLoopbackAddress());
+        List<Process> processes = new ArrayList<>();
+        try {
+            serverSocket.setSoTimeout(options.getWorkerTimeout());
+            for (int i = 0; i < spawnWorkers; i++) {
+                processes.add(spawnWorker(serverSocket.getLocalPort()));
+            }
+            if (options.getRemoteWorkers() > 0) {
+                System.err.println("Waiting for " + options.getRemoteWorkers() + " workers on " +
+                        serverSocket.getLocalSocketAddress());
+            }
+            Thread acceptor = new Thread(() -> accept(serverSocket, spawnWorkers + options.getRemoteWorkers()),
+                    "coordinator");
+            acceptor.start();
+
+            synchronized (this) {
+                while (remaining > 0 && (liveSessions > 0 || accepting)) {
+                    wait();
+                }
+            }
+            failUnfinished();
+        } catch (InterruptedException e) {
+            throw new IOException("Interrupted while waiting for the workers", e);
+        } finally {
+            serverSocket.close();
+            for (Process process : processes) {
+                try {
+                    if (!process.waitFor(options.getWorkerTimeout(), TimeUnit.MILLISECONDS)) {
+                        process.destroy();
+                    }
+                } catch (InterruptedException e) {
+                    process.destroy();
+                }
+            }
+        }
+    }
+
+    /**
+     * Function that accepts the workers until the expected number has connected, the accept times out or the job is
+     * over. Each worker is served by its own thread.
+     * @param serverSocket - the listening socket.
+     * @param expected - number of workers.
+     */
+    private void accept(ServerSocket serverSocket, int expected) {
+        try {
+            for (int i = 0; i < expected; i++) {
+                Socket socket = serverSocket.accept();
+                synchronized (this) {
+                    liveSessions++;
+                }
+                new Thread(() -> serve(socket), "coordinator-session").start();
+            }
+        } catch (SocketTimeoutException e) {
+            System.err.println("Timed out waiting for the workers");
+        } catch (IOException e) {
+            if (!serverSocket.isClosed()) {
+                e.printStackTrace();
+            }
+        } finally {
+            synchronized (this) {
+                accepting = false;
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Function that hands out fragments to one worker and collects its results until every fragment is mapped. If
+     * the connection fails, the fragments sent to the worker are handed out again.
+     * @param socket - connection of the worker.
+     */
+    private void serve(Socket socket) {
+        Map<Long, Task> inFlight = new HashMap<>();
+        try (Socket connection = socket) {
+            connection.setSoTimeout(options.getWorkerTimeout());
+            DataInputStream in = new DataInputStream(new BufferedInputStream(connection.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(connection.getOutputStream()));
+            int capacity = 2 * Math.max(1, (int) MapResultCodec.readVarLong(in));
+            MapResultCodec.writeVarLong(out, Math.max(1, options.getWorkerTimeout() / 4));
+            out.flush();
+
+            while (!isFinished()) {
+                while (inFlight.size() < capacity) {
+                    Task task = inFlight.isEmpty() ? pending.poll(POLL_MILLIS, TimeUnit.MILLISECONDS) : pending.poll();
+                    if (task == null) {
+                        break;
+                    }
+                    send(out, task);
+                    inFlight.put(task.id, task);
+                }
+                out.flush();
+                if (inFlight.isEmpty()) {
+                    continue;
+                }
+
+                int type = in.readUnsignedByte();
+                if (type == HEARTBEAT) {
+                    continue;
+                }
+                Task task = inFlight.remove(MapResultCodec.readVarLong(in));
+                if (task == null) {
+                    throw new IOException("Unknown fragment");
+                }
+                if (type == RESULT) {
+                    long bytes = MapResultCodec.readVarLong(in);
+                    long boundary = MapResultCodec.readVarLong(in);
+                    long tokenize = MapResultCodec.readVarLong(in);
+                    complete(task, MapResultCodec.read(in, manifest.getFiles().get(task.fragment.fileId)), bytes,
+                            boundary, tokenize);
+                } else {
+                    retry(task, new IOException(in.readUTF()));
+                }
+            }
+
+            out.writeByte(END);
+            out.flush();
+        } catch (IOException | InterruptedException e) {
+            if (!inFlight.isEmpty()) {
+                System.err.println("Lost worker " + socket.getRemoteSocketAddress() + " (" + e + "), handing out " +
+                        inFlight.size() + " fragments again");
+            }
+            for (Task task : inFlight.values()) {
+                retry(task, e);
+            }
+        } finally {
+            synchronized (this) {
+                liveSessions--;
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Function that sends the descriptor of a fragment.
+     * @param out - connection of the worker.
+     * @param task - the fragment.
+     * @throws IOException
+     */
+    private void send(DataOutputStream out, Task task) throws IOException {
+        Manifest.Fragment fragment = task.fragment;
+        out.writeByte(TASK);
+        MapResultCodec.writeVarLong(out, task.id);
+        out.writeUTF(manifest.getFiles().get(fragment.fileId));
+        MapResultCodec.writeVarLong(out, fragment.startPos);
+        MapResultCodec.writeVarLong(out, manifest.getFragmentLength());
+        MapResultCodec.writeVarLong(out, manifest.getFileSize(fragment.fileId));
+        MapResultCodec.writeVarLong(out, options.getMaxLongestWords());
+    }
+
+    /**
+     * Function that adds the result of a fragment to the Reduce state of its file, unless the fragment was already
+     * completed or failed.
+     * @param task - the fragment.
+     * @param result - its result.
+     * @param bytes - bytes of the fragment after the boundary adjustment, as read by the worker.
+     * @param boundary - nanoseconds the worker spent adjusting the boundaries.
+     * @param tokenize - nanoseconds the worker spent tokenizing.
+     */
+    private void complete(Task task, MapResult result, long bytes, long boundary, long tokenize) {
+        synchronized (this) {
+            if (task.finished) {
+                return;
+            }
+            task.finished = true;
+        }
+        metrics.recordMapTask(bytes, result.getWords().getTotal(), boundary, tokenize);
+        states.get(task.fragment.fileId).accumulate(result);
+        finishTask();
+    }
+
+    /**
+     * Function that hands out a fragment again after a failure, or fails its file after MAX_ATTEMPTS failures.
+     * @param task - the fragment.
+     * @param e - the failure.
+     */
+    private void retry(Task task, Exception e) {
+        synchronized (this) {
+            if (task.finished) {
+                return;
+            }
+            if (++task.attempts < MAX_ATTEMPTS) {
+                pending.addFirst(task);
+                return;
+            }
+            task.finished = true;
+        }
+        states.get(task.fragment.fileId).fail(e);
+        finishTask();
+    }
+
+    /**
+     * Function that fails the files of the fragments which were not mapped, once no worker is left.
+     */
+    private void failUnfinished() {
+        Task task;
+        while ((task = pending.poll()) != null) {
+            synchronized (this) {
+                if (task.finished) {
+                    continue;
+                }
+                task.finished = true;
+            }
+            states.get(task.fragment.fileId).fail(new IOException("No worker left to map " +
+                    manifest.getFiles().get(task.fragment.fileId)));
+        }
+    }
+
+    private synchronized void finishTask() {
+        remaining--;
+        notifyAll();
+    }
+
+    private synchronized boolean isFinished() {
+        return remaining == 0;
+    }
+
+    /**
+     * Function that starts a worker process on this machine, with the class path and the mapreduce system properties
+     * of the coordinator.
+     * @param port - port of the coordinator.
+     * @return - the process.
+     * @throws IOException
+     */
+    private Process spawnWorker(int port) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        for (String name : System.getProperties().stringPropertyNames()) {
+            if (name.startsWith("mapreduce.")) {
+                command.add("-D" + name + "=" + System.getProperty(name));
+            }
+        }
+        command.add("MapReduce");
+        command.add("worker");
+        command.add(String.valueOf(workerThreads));
+        command.add(InetAddress.getLoopbackAddress().getHostAddress() + ":" + port);
+
+        return new ProcessBuilder(command).inheritIO().start();
+    }
+
+    /**
+     * Fragment handed out to the workers.
+     */
+    private static class Task {
+        final long id;
+        final Manifest.Fragment fragment;
+        int attempts;
+        boolean finished;
+
+        Task(long id, Manifest.Fragment fragment) {
+            this.id = id;
+            this.fragment = fragment;
+        }
+    }
+}
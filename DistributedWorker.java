@@ -0,0 +1,118 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.Socket;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Worker process of the distributed engine: connects to a DistributedCoordinator, maps the fragments it receives on
+ * its own threads and sends back their results as soon as each one is computed. While fragments are being mapped, a
+ * heartbeat is sent at the interval given by the coordinator, so a long fragment does not look like a lost worker.
+ * The worker serves a single job and exits when the coordinator has no more fragments or closes the connection.
+ */
+class DistributedWorker {
+    private final int threads;
+    private final String host;
+    private final int port;
+
+    /**
+     * @param threads - number of fragments mapped at the same time.
+     * @param address - host:port of the coordinator.
+     */
+    public DistributedWorker(int threads, String address) {
+        int separator = address.lastIndexOf(':');
+        if (separator < 0) {
+            throw new IllegalArgumentException("Invalid coordinator address: " + address);
+        }
+        this.threads = Math.max(1, threads);
+        this.host = address.substring(0, separator);
+        this.port = Integer.parseInt(address.substring(separator + 1));
+    }
+
+    /**
+     * Function that serves the coordinator until it sends END or closes the connection.
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public void run() throws IOException, InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        ScheduledExecutorService heartbeat = Executors.newSingleThreadScheduledExecutor();
+        AtomicInteger running = new AtomicInteger();
+        JobMetrics metrics = new JobMetrics();
+
+        try (Socket socket = new Socket(host, port)) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            MapResultCodec.writeVarLong(out, threads);
+            out.flush();
+            long heartbeatMillis = MapResultCodec.readVarLong(in);
+            heartbeat.scheduleAtFixedRate(() -> {
+                if (running.get() == 0) {
+                    return;
+                }
+                try {
+                    synchronized (out) {
+                        out.writeByte(DistributedCoordinator.HEARTBEAT);
+                        out.flush();
+                    }
+                } catch (IOException e) {
+                    /**
+                     * The connection is lost: the exception cancels the heartbeat.
+                     */
+                    throw new UncheckedIOException(e);
+                }
+            }, heartbeatMillis, heartbeatMillis, TimeUnit.MILLISECONDS);
+
+            while (in.readUnsignedByte() == DistributedCoordinator.TASK) {
+                long id = MapResultCodec.readVarLong(in);
+                String filename = in.readUTF();
+                MapTask task = new MapTask(filename, MapResultCodec.readVarLong(in), MapResultCodec.readVarLong(in),
+                        MapResultCodec.readVarLong(in), (int) MapResultCodec.readVarLong(in), metrics);
+                running.incrementAndGet();
+                executor.execute(() -> {
+                    MapResult result = null;
+                    Exception failure = null;
+                    try {
+                        result = task.call();
+                    } catch (Exception e) {
+                        failure = e;
+                    }
+                    try {
+                        synchronized (out) {
+                            out.writeByte(failure == null ? DistributedCoordinator.RESULT :
+                                    DistributedCoordinator.FAILURE);
+                            MapResultCodec.writeVarLong(out, id);
+                            if (failure == null) {
+                                MapResultCodec.writeVarLong(out, task.getBytes());
+                                MapResultCodec.writeVarLong(out, task.getBoundaryNanos());
+                                MapResultCodec.writeVarLong(out, task.getTokenizeNanos());
+                                MapResultCodec.write(out, result);
+                            } else {
+                                out.writeUTF(String.valueOf(failure));
+                            }
+                            out.flush();
+                        }
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    } finally {
+                        running.decrementAndGet();
+                    }
+                });
+            }
+
+            executor.shutdown();
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.SECONDS);
+        } finally {
+            heartbeat.shutdownNow();
+            executor.shutdownNow();
+            FragmentReader.releaseAll();
+        }
+    }
+}
@@ -0,0 +1,207 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fixed set of worker threads shared by the jobs of a server. Each job submits to its own JobExecutor, which has its
+ * own queue; the workers take tasks from the queues in turn, so a job with many fragments cannot hold back the jobs
+ * submitted after it, and a job never runs more than its parallelism limit of tasks at the same time. The threads are
+ * started once and kept, so the jobs run on warm threads and JIT-compiled code.
+ */
+class FairWorkerPool {
+    private final List<JobExecutor> jobs = new ArrayList<>();
+    private final List<Thread> workers = new ArrayList<>();
+    private int nextJob;
+    private boolean closed;
+
+    /**
+     * @param workerCount - number of worker threads.
+     */
+    public FairWorkerPool(int workerCount) {
+        for (int i = 0; i < workerCount; i++) {
+            Thread worker = new Thread(this::work, "worker-" + i);
+            worker.setDaemon(true);
+            workers.add(worker);
+            worker.start();
+        }
+    }
+
+    public int getWorkerCount() {
+        return workers.size();
+    }
+
+    /**
+     * Function that creates the executor of a new job. Shutting it down only stops the job from submitting tasks; the
+     * workers keep running for the next jobs.
+     * @param maxParallelism - number of tasks of the job which may run at the same time.
+     * @return - the executor of the job.
+     */
+    public synchronized JobExecutor newJobExecutor(int maxParallelism) {
+        JobExecutor job = new JobExecutor(Math.max(1, maxParallelism));
+        jobs.add(job);
+        return job;
+    }
+
+    /**
+     * Function that stops the workers once the queued tasks are done.
+     */
+    public synchronized void shutdown() {
+        closed = true;
+        notifyAll();
+    }
+
+    /**
+     * Loop of a worker thread.
+     */
+    private void work() {
+        while (true) {
+            JobExecutor job;
+            Runnable task;
+
+            synchronized (this) {
+                while ((job = nextRunnableJob()) == null) {
+                    if (closed && jobs.isEmpty()) {
+                        return;
+                    }
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                task = job.queue.poll();
+                job.running++;
+            }
+
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            } finally {
+                synchronized (this) {
+                    job.running--;
+                    if (job.isTerminated()) {
+                        jobs.remove(job);
+                    }
+                    notifyAll();
+                }
+            }
+        }
+    }
+
+    /**
+     * Function that picks the next job, in turn, which has a queued task and is under its parallelism limit.
+     * @return - the job, or null if no task can run now.
+     */
+    private JobExecutor nextRunnableJob() {
+        for (int i = 0; i < jobs.size(); i++) {
+            JobExecutor job = jobs.get((nextJob + i) % jobs.size());
+            if (!job.queue.isEmpty() && job.running < job.maxParallelism) {
+                nextJob = (nextJob + i + 1) % jobs.size();
+                return job;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Executor of one job on the shared workers. It is terminated once it is shut down and all its tasks are done.
+     */
+    class JobExecutor extends AbstractExecutorService {
+        private final ArrayDeque<Runnable> queue = new ArrayDeque<>();
+        private final int maxParallelism;
+        private int running;
+        private boolean jobShutdown;
+
+        private JobExecutor(int maxParallelism) {
+            this.maxParallelism = maxParallelism;
+        }
+
+        /**
+         * @return - number of tasks of the job waiting for a worker.
+         */
+        public int getQueueSize() {
+            synchronized (FairWorkerPool.this) {
+                return queue.size();
+            }
+        }
+
+        /**
+         * @return - number of tasks of the job being run.
+         */
+        public int getRunning() {
+            synchronized (FairWorkerPool.this) {
+                return running;
+            }
+        }
+
+        public int getMaxParallelism() {
+            return maxParallelism;
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            synchronized (FairWorkerPool.this) {
+                if (jobShutdown || closed) {
+                    throw new RejectedExecutionException("Job executor is shut down");
+                }
+                queue.add(command);
+                FairWorkerPool.this.notifyAll();
+            }
+        }
+
+        @Override
+        public void shutdown() {
+            synchronized (FairWorkerPool.this) {
+                jobShutdown = true;
+                if (isTerminated()) {
+                    jobs.remove(this);
+                }
+                FairWorkerPool.this.notifyAll();
+            }
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            synchronized (FairWorkerPool.this) {
+                List<Runnable> pending = new ArrayList<>(queue);
+                queue.clear();
+                shutdown();
+                return pending;
+            }
+        }
+
+        @Override
+        public boolean isShutdown() {
+            synchronized (FairWorkerPool.this) {
+                return jobShutdown;
+            }
+        }
+
+        @Override
+        public boolean isTerminated() {
+            synchronized (FairWorkerPool.this) {
+                return jobShutdown && queue.isEmpty() && running == 0;
+            }
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+            long remaining = unit.toNanos(timeout);
+            synchronized (FairWorkerPool.this) {
+                while (!isTerminated()) {
+                    if (remaining <= 0) {
+                        return false;
+                    }
+                    long start = System.nanoTime();
+                    TimeUnit.NANOSECONDS.timedWait(FairWorkerPool.this, remaining);
+                    remaining -= System.nanoTime() - start;
+                }
+                return true;
+            }
+        }
+    }
+}
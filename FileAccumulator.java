@@ -0,0 +1,128 @@
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free running Reduce state of one file, used by the combiner engine. The workers add the counts of their Map
+ * results straight into shared atomic counters indexed by word length, and raise the maximal length with a CAS, so
+ * several workers can finish fragments of the same file without waiting for each other. Only the longest words are
+ * merged under a lock, and only by the fragments whose words are at least as long as the longest seen so far. When the
+ * last fragment has been added, the counters are read once and only the rang is left to compute.
+ */
+class FileAccumulator implements FileAggregator {
+    /**
+     * Word lengths counted in the atomic array; longer words are rare and counted in a map.
+     */
+    private static final int DIRECT_LENGTHS = 64;
+
+    private final String filename;
+    private final AtomicLongArray counts = new AtomicLongArray(DIRECT_LENGTHS);
+    private final Map<Integer, LongAdder> longCounts = new ConcurrentHashMap<>();
+    private final AtomicInteger maxLength = new AtomicInteger();
+    private final LongestWords maximalWords;
+    private volatile int maximalLength;
+    private final AtomicInteger remainingFragments;
+    private final RankWeights weights;
+    private final JobMetrics metrics;
+    private final CompletableFuture<ReduceResult> result = new CompletableFuture<>();
+
+    public FileAccumulator(String filename, int fragmentCount, JobOptions options, JobMetrics metrics) {
+        this.filename = filename;
+        this.maximalWords = new LongestWords(options.getMaxLongestWords());
+        this.remainingFragments = new AtomicInteger(fragmentCount);
+        this.weights = options.getRankWeights();
+        this.metrics = metrics;
+        if (fragmentCount == 0) {
+            complete();
+        }
+    }
+
+    /**
+     * Function that adds the result of a Map task to the counters of the file. The worker which delivers the last
+     * fragment also computes the final ReduceResult.
+     * @param mapResult - result of a Map task for this file.
+     */
+    @Override
+    public void accumulate(MapResult mapResult) {
+        WordHistogram words = mapResult.getWords();
+        for (int length = 1; length <= words.getMaxLength(); length++) {
+            long count = words.get(length);
+            if (count == 0) {
+                continue;
+            }
+            if (length < DIRECT_LENGTHS) {
+                counts.getAndAdd(length, count);
+            } else {
+                longCounts.computeIfAbsent(length, key -> new LongAdder()).add(count);
+            }
+        }
+        raiseMaxLength(words.getMaxLength());
+
+        LongestWords fragmentWords = mapResult.getMaximalWords();
+        if (fragmentWords.getLength() >= maximalLength) {
+            synchronized (maximalWords) {
+                maximalWords.merge(fragmentWords);
+                maximalLength = maximalWords.getLength();
+            }
+        }
+
+        if (remainingFragments.decrementAndGet() == 0) {
+            complete();
+        }
+    }
+
+    @Override
+    public void fail(Throwable e) {
+        result.completeExceptionally(e);
+    }
+
+    @Override
+    public CompletableFuture<ReduceResult> getResult() {
+        return result;
+    }
+
+    /**
+     * Function that raises the maximal word length of the file to the given length if it is lower.
+     * @param length - a word length.
+     */
+    private void raiseMaxLength(int length) {
+        int current = maxLength.get();
+        while (current < length && !maxLength.compareAndSet(current, length)) {
+            current = maxLength.get();
+        }
+    }
+
+    /**
+     * Function that reads the counters and publishes the ReduceResult of the file. The decrement of the last fragment
+     * comes after the updates of every worker, so they are all visible here.
+     */
+    private void complete() {
+        WordHistogram words = new WordHistogram();
+        for (int length = 1; length <= maxLength.get(); length++) {
+            long count;
+            if (length < DIRECT_LENGTHS) {
+                count = counts.get(length);
+            } else {
+                LongAdder adder = longCounts.get(length);
+                count = adder == null ? 0 : adder.sum();
+            }
+            if (count != 0) {
+                words.add(length, count);
+            }
+        }
+
+        MapResult merged;
+        synchronized (maximalWords) {
+            merged = new MapResult(filename, maximalWords, words);
+        }
+        try {
+            result.complete(new ReduceTask(filename, Collections.singletonList(merged), weights, metrics).call());
+        } catch (Exception e) {
+            result.completeExceptionally(e);
+        }
+    }
+}
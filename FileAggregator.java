@@ -0,0 +1,21 @@
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Per-file state into which the workers of the pipelined engines put the results of their Map tasks. The
+ * ReduceResult of the file is published as soon as the result of its last fragment has been added.
+ */
+interface FileAggregator {
+    /**
+     * Function that adds the result of a Map task of the file.
+     * @param mapResult - result of a Map task for this file.
+     */
+    void accumulate(MapResult mapResult);
+
+    /**
+     * Function that reports a failed Map task of the file.
+     * @param e - the failure.
+     */
+    void fail(Throwable e);
+
+    CompletableFuture<ReduceResult> getResult();
+}
@@ -0,0 +1,61 @@
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Fork/join Map task over a range of a file. Ranges larger than the threshold are split in two at a word boundary
+ * and the results of the two halves are merged on the way back, so small files cost a single task and large files
+ * are spread over all the workers of the pool by work stealing.
+ */
+class FileRangeTask extends RecursiveTask<MapResult> {
+    private static final long serialVersionUID = 1L;
+
+    private String filename;
+    private long startPos;
+    private long endPos;
+    private long fileSize;
+    private long threshold;
+    private int maxLongestWords;
+    private JobMetrics metrics;
+
+    public FileRangeTask(String filename, long startPos, long endPos, long fileSize, long threshold,
+                         int maxLongestWords, JobMetrics metrics) {
+        this.filename = filename;
+        this.startPos = startPos;
+        this.endPos = endPos;
+        this.fileSize = fileSize;
+        this.threshold = threshold;
+        this.maxLongestWords = maxLongestWords;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Function that is being runned by a worker of the pool.
+     * @return a MapResult object for the whole range.
+     */
+    @Override
+    protected MapResult compute() {
+        try {
+            if (endPos - startPos > threshold && CompressedInput.isSplittable(filename)) {
+                long middle = startPos + (endPos - startPos) / 2;
+                try (FragmentReader reader = FragmentReader.forFragment(filename, middle, middle)) {
+                    middle = reader.adjustEndPos(middle);
+                }
+                if (middle < endPos) {
+                    FileRangeTask left = new FileRangeTask(filename, startPos, middle, fileSize, threshold,
+                            maxLongestWords, metrics);
+                    FileRangeTask right = new FileRangeTask(filename, middle, endPos, fileSize, threshold,
+                            maxLongestWords, metrics);
+
+                    left.fork();
+                    MapResult rightResult = right.compute();
+                    MapResult result = left.join();
+                    result.merge(rightResult);
+                    return result;
+                }
+            }
+
+            return new MapTask(filename, startPos, endPos - startPos, fileSize, maxLongestWords, metrics).call();
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
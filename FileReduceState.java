@@ -0,0 +1,69 @@
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Running Reduce state of one file, used by the pipelined engine. Map results are merged into it as soon as they are
+ * computed, so they do not have to be kept until all Map tasks finish. When the last fragment of the file arrives the
+ * final ReduceResult is computed and published.
+ */
+class FileReduceState implements FileAggregator {
+    private final String filename;
+    private final MapResult merged;
+    private final RankWeights weights;
+    private final JobMetrics metrics;
+    private final CompletableFuture<ReduceResult> result;
+    private int remainingFragments;
+
+    public FileReduceState(String filename, int fragmentCount, JobOptions options, JobMetrics metrics) {
+        this.filename = filename;
+        this.merged = new MapResult(filename, new LongestWords(options.getMaxLongestWords()), new WordHistogram());
+        this.weights = options.getRankWeights();
+        this.metrics = metrics;
+        this.result = new CompletableFuture<>();
+        this.remainingFragments = fragmentCount;
+        if (fragmentCount == 0) {
+            complete();
+        }
+    }
+
+    /**
+     * Function that merges the result of a Map task into the state of the file. The worker which delivers the last
+     * fragment also computes the final ReduceResult.
+     * @param mapResult - result of a Map task for this file.
+     */
+    @Override
+    public void accumulate(MapResult mapResult) {
+        boolean last;
+
+        synchronized (this) {
+            merged.merge(mapResult);
+            remainingFragments--;
+            last = remainingFragments == 0;
+        }
+
+        if (last) {
+            complete();
+        }
+    }
+
+    @Override
+    public void fail(Throwable e) {
+        result.completeExceptionally(e);
+    }
+
+    @Override
+    public CompletableFuture<ReduceResult> getResult() {
+        return result;
+    }
+
+    /**
+     * Function that runs the Reduce operation on the merged state and publishes its result.
+     */
+    private void complete() {
+        try {
+            result.complete(new ReduceTask(filename, Collections.singletonList(merged), weights, metrics).call());
+        } catch (Exception e) {
+            result.completeExceptionally(e);
+        }
+    }
+}
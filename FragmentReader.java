@@ -0,0 +1,257 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32C;
+
+/**
+ * Read-only view over a memory-mapped input file. All MapTasks working on the same file share one reader, so the
+ * file is mapped only once and every byte access is a plain memory read instead of a system call.
+ *
+ * A single mapping cannot exceed 2 GB, so the file is mapped in consecutive windows of WINDOW_SIZE bytes and
+ * positions are longs. Scans which should not pay for finding the window of every byte go through getWindow and
+ * walk one window at a time.
+ *
+ * A reader can also hold a single buffer of decompressed bytes, covering only a part of a compressed file. Its
+ * positions are still positions in the uncompressed file, so boundary adjustment and scans work on it unchanged.
+ *
+ * Jobs running in the same JVM share the readers. Each job retains its files through its Manifest and releases them
+ * when it no longer reads them; the reader of a file, and the index of a compressed file, are dropped when the last
+ * job using the file releases it.
+ */
+class FragmentReader implements AutoCloseable {
+    /**
+     * Size of a mapping window, a power of two. It can be lowered with -Dmapreduce.windowSize to exercise the window
+     * boundaries on small files.
+     */
+    static final long WINDOW_SIZE = Long.highestOneBit(Long.getLong("mapreduce.windowSize", 1L << 30));
+    private static final int WINDOW_SHIFT = Long.numberOfTrailingZeros(WINDOW_SIZE);
+    private static final ConcurrentHashMap<String, FragmentReader> readers = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, Integer> users = new ConcurrentHashMap<>();
+
+    private final ByteBuffer[] windows;
+    private final long base;
+    private final int windowShift;
+    private final long fileSize;
+    private final Runnable onClose;
+
+    private FragmentReader(String filename) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+            this.fileSize = channel.size();
+            this.windows = new ByteBuffer[(int) ((fileSize + WINDOW_SIZE - 1) >>> WINDOW_SHIFT)];
+            for (int i = 0; i < windows.length; i++) {
+                long start = (long) i << WINDOW_SHIFT;
+                windows[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(WINDOW_SIZE, fileSize - start));
+            }
+        }
+        this.base = 0;
+        this.windowShift = WINDOW_SHIFT;
+        this.onClose = null;
+    }
+
+    /**
+     * @param buffer - bytes of the file from position base, up to the limit of the buffer.
+     * @param base - position in file of the first byte of the buffer.
+     * @param fileSize - size of the whole file.
+     * @param onClose - called by close, or null.
+     */
+    FragmentReader(ByteBuffer buffer, long base, long fileSize, Runnable onClose) {
+        this.windows = new ByteBuffer[] {buffer};
+        this.base = base;
+        this.windowShift = 31;
+        this.fileSize = fileSize;
+        this.onClose = onClose;
+    }
+
+    /**
+     * Function that returns the shared reader of a file, mapping the file on first use.
+     * @param filename - name of the file.
+     * @return - the reader of the file.
+     * @throws IOException
+     */
+    static FragmentReader forFile(String filename) throws IOException {
+        try {
+            return readers.computeIfAbsent(filename, name -> {
+                try {
+                    return new FragmentReader(name);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Function that returns a reader holding at least the bytes needed to map a fragment: the fragment itself, the
+     * byte before it and the rest of the word at its end. A plain file gives its shared reader; a compressed file
+     * gives a reader of the decompressed blocks of the fragment, which must be closed once the fragment is mapped.
+     * Compressed files which cannot be split are not read this way, see CompressedInput.scanStream.
+     * @param filename - name of the file.
+     * @param startPos - start position of the fragment, before adjustment.
+     * @param endPos - end position of the fragment, before adjustment.
+     * @return - the reader.
+     * @throws IOException
+     */
+    static FragmentReader forFragment(String filename, long startPos, long endPos) throws IOException {
+        CompressedInput input = CompressedInput.forFile(filename);
+        return input != null ? input.read(startPos, endPos) : forFile(filename);
+    }
+
+    /**
+     * Function that records that a job will read a file, so its shared reader is kept until the job releases it.
+     * @param filename - name of the file.
+     */
+    static void retain(String filename) {
+        users.merge(filename, 1, Integer::sum);
+    }
+
+    /**
+     * Function that releases a file retained by a job once the job will read no more fragments of it. The shared
+     * reader of the file, and its index if it is compressed, are dropped when no other job retains the file.
+     * @param filename - name of the file.
+     */
+    static void release(String filename) {
+        users.compute(filename, (name, count) -> {
+            if (count != null && count > 1) {
+                return count - 1;
+            }
+            readers.remove(name);
+            CompressedInput.release(name);
+            return null;
+        });
+    }
+
+    /**
+     * Function that drops all shared readers, in processes which run a single job, such as a worker of the
+     * distributed engine. The mappings are released once no task references them anymore.
+     */
+    static void releaseAll() {
+        users.clear();
+        readers.clear();
+        CompressedInput.releaseAll();
+    }
+
+    /**
+     * Function that gives back the buffer of a reader of decompressed bytes. Shared readers of plain files are not
+     * affected.
+     */
+    @Override
+    public void close() {
+        if (onClose != null) {
+            onClose.run();
+        }
+    }
+
+    long getFileSize() {
+        return fileSize;
+    }
+
+    /**
+     * Function that returns the byte found on a position. Absolute reads do not touch the buffer position, so the
+     * reader can be used by several workers at the same time.
+     * @param pos - position in file.
+     * @return - the byte as an unsigned value.
+     */
+    int get(long pos) {
+        long offset = pos - base;
+        return windows[(int) (offset >>> windowShift)].get((int) (offset & ((1L << windowShift) - 1))) & 0xFF;
+    }
+
+    /**
+     * Function that returns the mapping window holding a position. The byte at position pos is at index
+     * pos - getWindowStart(pos) of the window.
+     * @param pos - position in file.
+     * @return - the window, shared by all users of the reader: only absolute reads may be used on it.
+     */
+    ByteBuffer getWindow(long pos) {
+        return windows[(int) ((pos - base) >>> windowShift)];
+    }
+
+    /**
+     * @param pos - position in file.
+     * @return - position in file of the first byte of the window holding pos.
+     */
+    long getWindowStart(long pos) {
+        return base + ((pos - base) & -(1L << windowShift));
+    }
+
+    /**
+     * Function that copies the text between two positions into a new string. The text may span several windows.
+     * @param startPos - first position (inclusive).
+     * @param endPos - last position (exclusive).
+     * @return - the copied text.
+     */
+    String getString(long startPos, long endPos) {
+        byte[] bytes = new byte[Math.toIntExact(endPos - startPos)];
+        get(startPos, bytes, 0, bytes.length);
+        return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Function that copies bytes into an array. The bytes may span several windows.
+     * @param startPos - position in file of the first byte.
+     * @param bytes - destination array.
+     * @param offset - index in the array of the first byte.
+     * @param length - number of bytes.
+     */
+    void get(long startPos, byte[] bytes, int offset, int length) {
+        int copied = 0;
+        while (copied < length) {
+            long pos = startPos + copied;
+            int windowOffset = (int) (pos - getWindowStart(pos));
+            int chunk = (int) Math.min(length - copied, (1L << windowShift) - windowOffset);
+            getWindow(pos).duplicate().position(windowOffset).get(bytes, offset + copied, chunk);
+            copied += chunk;
+        }
+    }
+
+    /**
+     * Function that computes a checksum of the whole content of the file.
+     * @return - the CRC32C of the file.
+     */
+    long checksum() {
+        CRC32C crc = new CRC32C();
+        for (ByteBuffer window : windows) {
+            crc.update(window.duplicate().clear());
+        }
+        return crc.getValue();
+    }
+
+    /**
+     * Function that returns the correct start position of a fragment. If startPos is in the middle of a word we skip
+     * the whole word, since it belongs to the previous fragment.
+     * @param startPos - initial start position.
+     * @return - correct start position.
+     */
+    long adjustStartPos(long startPos) {
+        if (startPos != 0 && !Utils.isSpecialCharacter((char) get(startPos - 1))) {
+            while (startPos < fileSize && !Utils.isSpecialCharacter((char) get(startPos))) {
+                startPos++;
+            }
+        }
+        return startPos;
+    }
+
+    /**
+     * Function that returns the correct end position of a fragment. If endPos is in the middle of a word we take the
+     * whole word.
+     * @param endPos - initial end position.
+     * @return - correct end position.
+     */
+    long adjustEndPos(long endPos) {
+        if (endPos != fileSize && !Utils.isSpecialCharacter((char) get(endPos - 1))
+                && !Utils.isSpecialCharacter((char) get(endPos))) {
+            endPos++;
+            while (endPos < fileSize && !Utils.isSpecialCharacter((char) get(endPos))) {
+                endPos++;
+            }
+        }
+        return endPos;
+    }
+}
@@ -0,0 +1,77 @@
+import java.util.Iterator;
+import java.util.concurrent.Executor;
+
+/**
+ * Submits the Map tasks of a job as the workers take them instead of all at once. The fragments are taken one at a
+ * time from the lazy plan of the manifest, and the submitting thread blocks while the fragments submitted and not yet
+ * mapped reach the bounds of the limiter, in number or in bytes. The queue of the executor and the fragment
+ * descriptors therefore take the same memory whatever the size of the input.
+ */
+class FragmentScheduler {
+    private final IoLimiter limiter;
+    private int pending;
+
+    /**
+     * @param limiter - bounds of the fragments submitted and not yet mapped.
+     */
+    public FragmentScheduler(IoLimiter limiter) {
+        this.limiter = limiter;
+    }
+
+    /**
+     * Function that runs a task for every fragment on an executor, then waits until all of them are finished.
+     * @param fragments - the fragments, in the order in which they should be submitted.
+     * @param executor - executor on which the tasks run.
+     * @param task - work done for one fragment. It must handle its own failures.
+     * @throws InterruptedException
+     * @throws java.util.concurrent.RejectedExecutionException - if the executor rejects a fragment. The bounds taken
+     * by the fragment are given back first.
+     */
+    public void run(Iterator<Manifest.Fragment> fragments, Executor executor, FragmentTask task)
+            throws InterruptedException {
+        while (fragments.hasNext()) {
+            Manifest.Fragment fragment = fragments.next();
+            limiter.acquire(fragment.length);
+            synchronized (this) {
+                pending++;
+            }
+            try {
+                executor.execute(() -> {
+                    try {
+                        task.run(fragment);
+                    } finally {
+                        finish(fragment);
+                    }
+                });
+            } catch (RuntimeException e) {
+                finish(fragment);
+                throw e;
+            }
+        }
+
+        synchronized (this) {
+            while (pending > 0) {
+                wait();
+            }
+        }
+    }
+
+    /**
+     * Function that gives back the bounds taken by a fragment once it is mapped, or once it could not be submitted.
+     * @param fragment - the fragment.
+     */
+    private void finish(Manifest.Fragment fragment) {
+        limiter.release(fragment.length);
+        synchronized (this) {
+            pending--;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Work done for one fragment.
+     */
+    interface FragmentTask {
+        void run(Manifest.Fragment fragment);
+    }
+}
@@ -0,0 +1,53 @@
+import java.util.concurrent.Semaphore;
+
+/**
+ * Bounds the I/O done by Map tasks when they run on an unbounded number of threads: at most maxOpenFiles fragments
+ * are read at the same time and the fragments being read add up to at most maxInFlightBytes bytes. The same bounds
+ * are used by FragmentScheduler for the fragments submitted and not yet mapped.
+ *
+ * The bytes are counted with the int permits of a Semaphore, so the bound is clamped to Integer.MAX_VALUE and a
+ * fragment larger than the bound takes all of it.
+ */
+class IoLimiter {
+    private final Semaphore openFiles;
+    private final Semaphore inFlightBytes;
+    private final int maxInFlightBytes;
+
+    public IoLimiter(int maxOpenFiles, long maxInFlightBytes) {
+        this.maxInFlightBytes = (int) Math.max(1, Math.min(maxInFlightBytes, Integer.MAX_VALUE));
+        this.openFiles = new Semaphore(maxOpenFiles, true);
+        this.inFlightBytes = new Semaphore(this.maxInFlightBytes, true);
+    }
+
+    /**
+     * Function that blocks the calling thread until a fragment of the given size may be read.
+     * @param bytes - size of the fragment.
+     * @throws InterruptedException
+     */
+    public void acquire(long bytes) throws InterruptedException {
+        openFiles.acquire();
+        try {
+            inFlightBytes.acquire(permits(bytes));
+        } catch (InterruptedException e) {
+            openFiles.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Function that gives back the permits taken by acquire.
+     * @param bytes - size of the fragment.
+     */
+    public void release(long bytes) {
+        inFlightBytes.release(permits(bytes));
+        openFiles.release();
+    }
+
+    /**
+     * @param bytes - size of a fragment.
+     * @return - number of permits taken by the fragment, between 0 and the bound.
+     */
+    private int permits(long bytes) {
+        return (int) Math.max(0, Math.min(bytes, maxInFlightBytes));
+    }
+}
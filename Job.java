@@ -0,0 +1,39 @@
+/**
+ * Computation run over the words of the input files: a Mapper for each fragment, a Combiner for the values of the
+ * same key and a Reducer for the combined value of each key. The splitting, scheduling and I/O are left to the
+ * JobRunner.
+ * @param <K> - type of the keys of the intermediate records.
+ * @param <V> - type of their values.
+ */
+interface Job<K, V> {
+
+    /**
+     * @param filename - file of the fragment.
+     * @return - a new Mapper for one fragment of the file.
+     */
+    Mapper<K, V> newMapper(String filename);
+
+    Combiner<V> getCombiner();
+
+    Reducer<K, V> getReducer();
+
+    /**
+     * Function that creates the job of the given type.
+     * @param type - type of the job.
+     * @param options - settings of the job.
+     * @param metrics - counters of the job.
+     * @return - the job.
+     */
+    static Job<?, ?> create(JobOptions.JobType type, JobOptions options, JobMetrics metrics) {
+        switch (type) {
+            case RANK:
+                return new RankJob(options.getMaxLongestWords(), options.getRankWeights(), metrics);
+            case WORDS:
+                return new WordFrequencyJob();
+            case CHARS:
+                return new CharClassJob();
+            default:
+                throw new IllegalArgumentException("Unknown job: " + type);
+        }
+    }
+}
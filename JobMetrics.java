@@ -0,0 +1,373 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Counters of a job. Workers only add to LongAdders, which are striped per thread, so recording does not make the
+ * workers contend with each other. When a summary is written or the metrics are read through JMX, the executors of
+ * the job are sampled every few milliseconds by a daemon thread to follow their queue depth and utilization. The
+ * metrics can be read through JMX while the job runs, if it is enabled, and are written as a JSON summary when it
+ * ends.
+ */
+public class JobMetrics implements JobMetricsMXBean {
+    private static final long SAMPLE_PERIOD_MILLIS = 10;
+
+    private final LongAdder mapTasks = new LongAdder();
+    private final LongAdder bytesRead = new LongAdder();
+    private final LongAdder wordsTokenized = new LongAdder();
+    private final LongAdder boundaryNanos = new LongAdder();
+    private final LongAdder tokenizeNanos = new LongAdder();
+    private final LatencyHistogram fragmentLatency = new LatencyHistogram();
+    private final LongAdder reduceTasks = new LongAdder();
+    private final LongAdder reduceMergeNanos = new LongAdder();
+    private final LatencyHistogram reduceMergeLatency = new LatencyHistogram();
+    private final LongAccumulator maxQueueDepth = new LongAccumulator(Math::max, 0);
+    private final LongAdder queueDepthSamples = new LongAdder();
+    private final LongAdder samples = new LongAdder();
+    private final LongAdder activeThreadSamples = new LongAdder();
+    private final LongAdder poolSizeSamples = new LongAdder();
+    private final List<ExecutorService> executors = new CopyOnWriteArrayList<>();
+    private final Map<String, Long> phaseMillis = Collections.synchronizedMap(new LinkedHashMap<>());
+    private final boolean sampled;
+    private ScheduledExecutorService sampler;
+    private ObjectName objectName;
+
+    /**
+     * Metrics whose executors are not sampled, unless they are registered with JMX.
+     */
+    public JobMetrics() {
+        this(false);
+    }
+
+    /**
+     * @param sampled - whether the executors are sampled, because a summary of the metrics is written.
+     */
+    public JobMetrics(boolean sampled) {
+        this.sampled = sampled;
+    }
+
+    /**
+     * Function that records a finished Map task.
+     * @param bytes - bytes of the fragment after the boundary adjustment.
+     * @param words - words found in the fragment.
+     * @param boundary - nanoseconds spent adjusting the boundaries.
+     * @param tokenize - nanoseconds spent tokenizing.
+     */
+    public void recordMapTask(long bytes, long words, long boundary, long tokenize) {
+        mapTasks.increment();
+        bytesRead.add(bytes);
+        wordsTokenized.add(words);
+        boundaryNanos.add(boundary);
+        tokenizeNanos.add(tokenize);
+        fragmentLatency.record(boundary + tokenize);
+    }
+
+    /**
+     * Function that records the merge done by a Reduce task.
+     * @param merge - nanoseconds spent merging the Map results of the file.
+     */
+    public void recordReduceTask(long merge) {
+        reduceTasks.increment();
+        reduceMergeNanos.add(merge);
+        reduceMergeLatency.record(merge);
+    }
+
+    /**
+     * Function that records the wall-clock time of a phase of the job.
+     * @param phase - name of the phase.
+     * @param startNanos - System.nanoTime() at the start of the phase.
+     */
+    public void recordPhase(String phase, long startNanos) {
+        phaseMillis.put(phase, (System.nanoTime() - startNanos) / 1_000_000);
+    }
+
+    /**
+     * Function that adds an executor to the ones whose queue and threads are sampled.
+     * @param executor - the executor.
+     */
+    public void watch(ExecutorService executor) {
+        executors.add(executor);
+    }
+
+    /**
+     * Function that registers the metrics with the platform MBean server, if asked, and starts sampling the executors
+     * if the metrics are sampled or registered. Starting the platform MBean server takes a large part of the time of
+     * a small job, so it is only done on demand.
+     * @param name - name of the job, used in the JMX object name.
+     * @param jmx - whether the metrics are registered with the platform MBean server.
+     */
+    public void start(String name, boolean jmx) {
+        if (jmx) {
+            try {
+                MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+                objectName = new ObjectName("MapReduce:type=JobMetrics,name=" + ObjectName.quote(name));
+                server.registerMBean(this, objectName);
+            } catch (JMException e) {
+                objectName = null;
+            }
+        }
+        if (!sampled && objectName == null) {
+            return;
+        }
+
+        sampler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "metrics-sampler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sampler.scheduleAtFixedRate(this::sample, 0, SAMPLE_PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Function that stops sampling and unregisters the metrics from JMX. Stopping metrics which are not started does
+     * nothing.
+     */
+    public void stop() {
+        if (sampler != null) {
+            sampler.shutdownNow();
+            sampler = null;
+        }
+        if (objectName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            } catch (JMException e) {
+                e.printStackTrace();
+            }
+            objectName = null;
+        }
+    }
+
+    /**
+     * Function that writes a JSON summary of the metrics.
+     * @param file - destination.
+     * @throws IOException
+     */
+    public void writeSummary(Path file) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(file)) {
+            writer.write("{\n");
+            writer.write("  \"phases_ms\": {");
+            synchronized (phaseMillis) {
+                String separator = "";
+                for (Map.Entry<String, Long> phase : phaseMillis.entrySet()) {
+                    writer.write(separator + "\"" + phase.getKey() + "\": " + phase.getValue());
+                    separator = ", ";
+                }
+            }
+            writer.write("},\n");
+            writer.write("  \"map\": {\"tasks\": " + mapTasks.sum() + ", \"bytes_read\": " + bytesRead.sum() +
+                    ", \"words_tokenized\": " + wordsTokenized.sum() +
+                    ", \"boundary_ms\": " + boundaryNanos.sum() / 1_000_000 +
+                    ", \"tokenize_ms\": " + tokenizeNanos.sum() / 1_000_000 +
+                    ", \"fragment_latency_us\": " + fragmentLatency.toJson() + "},\n");
+            writer.write("  \"reduce\": {\"tasks\": " + reduceTasks.sum() +
+                    ", \"merge_ms\": " + reduceMergeNanos.sum() / 1_000_000 +
+                    ", \"merge_latency_us\": " + reduceMergeLatency.toJson() + "},\n");
+            writer.write("  \"executor\": {\"max_queue_depth\": " + getMaxQueueDepth() +
+                    ", \"avg_queue_depth\": " + String.format(Locale.ROOT, "%.1f", average(queueDepthSamples)) +
+                    ", \"utilization\": " + String.format(Locale.ROOT, "%.3f", getUtilization()) + "}\n");
+            writer.write("}\n");
+        }
+    }
+
+    @Override
+    public long getMapTasks() {
+        return mapTasks.sum();
+    }
+
+    @Override
+    public long getBytesRead() {
+        return bytesRead.sum();
+    }
+
+    @Override
+    public long getWordsTokenized() {
+        return wordsTokenized.sum();
+    }
+
+    @Override
+    public long getBoundaryMillis() {
+        return boundaryNanos.sum() / 1_000_000;
+    }
+
+    @Override
+    public long getTokenizeMillis() {
+        return tokenizeNanos.sum() / 1_000_000;
+    }
+
+    @Override
+    public long getFragmentLatencyP50Micros() {
+        return fragmentLatency.percentile(0.5) / 1000;
+    }
+
+    @Override
+    public long getFragmentLatencyP99Micros() {
+        return fragmentLatency.percentile(0.99) / 1000;
+    }
+
+    @Override
+    public long getReduceTasks() {
+        return reduceTasks.sum();
+    }
+
+    @Override
+    public long getReduceMergeMillis() {
+        return reduceMergeNanos.sum() / 1_000_000;
+    }
+
+    @Override
+    public int getQueueDepth() {
+        int depth = 0;
+        for (ExecutorService executor : executors) {
+            if (executor instanceof ThreadPoolExecutor) {
+                depth += ((ThreadPoolExecutor) executor).getQueue().size();
+            } else if (executor instanceof ForkJoinPool) {
+                depth += ((ForkJoinPool) executor).getQueuedSubmissionCount();
+            } else if (executor instanceof FairWorkerPool.JobExecutor) {
+                depth += ((FairWorkerPool.JobExecutor) executor).getQueueSize();
+            }
+        }
+        return depth;
+    }
+
+    @Override
+    public long getMaxQueueDepth() {
+        return maxQueueDepth.get();
+    }
+
+    @Override
+    public int getActiveThreads() {
+        int active = 0;
+        for (ExecutorService executor : executors) {
+            if (executor instanceof ThreadPoolExecutor) {
+                active += ((ThreadPoolExecutor) executor).getActiveCount();
+            } else if (executor instanceof ForkJoinPool) {
+                active += ((ForkJoinPool) executor).getActiveThreadCount();
+            } else if (executor instanceof FairWorkerPool.JobExecutor) {
+                active += ((FairWorkerPool.JobExecutor) executor).getRunning();
+            }
+        }
+        return active;
+    }
+
+    /**
+     * @return - average share of the threads of the watched executors which were running a task.
+     */
+    @Override
+    public double getUtilization() {
+        long poolSize = poolSizeSamples.sum();
+        return poolSize == 0 ? 0 : (double) activeThreadSamples.sum() / poolSize;
+    }
+
+    @Override
+    public Map<String, Long> getPhaseMillis() {
+        synchronized (phaseMillis) {
+            return new LinkedHashMap<>(phaseMillis);
+        }
+    }
+
+    /**
+     * Function that samples the queue depth and the busy threads of the executors which are still running.
+     */
+    private void sample() {
+        int poolSize = 0;
+        for (ExecutorService executor : executors) {
+            if (executor.isTerminated()) {
+                continue;
+            }
+            if (executor instanceof ThreadPoolExecutor) {
+                poolSize += ((ThreadPoolExecutor) executor).getPoolSize();
+            } else if (executor instanceof ForkJoinPool) {
+                poolSize += ((ForkJoinPool) executor).getParallelism();
+            } else if (executor instanceof FairWorkerPool.JobExecutor) {
+                poolSize += ((FairWorkerPool.JobExecutor) executor).getMaxParallelism();
+            }
+        }
+        if (poolSize == 0) {
+            return;
+        }
+
+        int depth = getQueueDepth();
+        samples.increment();
+        queueDepthSamples.add(depth);
+        maxQueueDepth.accumulate(depth);
+        activeThreadSamples.add(Math.min(getActiveThreads(), poolSize));
+        poolSizeSamples.add(poolSize);
+    }
+
+    private double average(LongAdder sampled) {
+        long count = samples.sum();
+        return count == 0 ? 0 : (double) sampled.sum() / count;
+    }
+
+    /**
+     * Histogram of durations with one bucket per power of two nanoseconds.
+     */
+    static class LatencyHistogram {
+        private final LongAdder[] buckets = new LongAdder[64];
+
+        LatencyHistogram() {
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        void record(long nanos) {
+            buckets[63 - Long.numberOfLeadingZeros(Math.max(nanos, 1))].increment();
+        }
+
+        /**
+         * Function that returns an upper bound of a percentile.
+         * @param fraction - the percentile, between 0 and 1.
+         * @return - the upper bound of the bucket holding the percentile, in nanoseconds.
+         */
+        long percentile(double fraction) {
+            long total = 0;
+            for (LongAdder bucket : buckets) {
+                total += bucket.sum();
+            }
+            long seen = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                seen += buckets[i].sum();
+                if (total > 0 && seen >= fraction * total) {
+                    return 1L << Math.min(i + 1, 62);
+                }
+            }
+            return 0;
+        }
+
+        String toJson() {
+            StringBuilder json = new StringBuilder("{\"p50\": " + percentile(0.5) / 1000 +
+                    ", \"p90\": " + percentile(0.9) / 1000 + ", \"p99\": " + percentile(0.99) / 1000 +
+                    ", \"max\": " + percentile(1) / 1000 + ", \"buckets\": {");
+            String separator = "";
+            for (int i = 0; i < buckets.length; i++) {
+                long count = buckets[i].sum();
+                if (count != 0) {
+                    json.append(separator).append("\"<").append((1L << Math.min(i + 1, 62)) / 1000).append("\": ")
+                            .append(count);
+                    separator = ", ";
+                }
+            }
+            return json.append("}}").toString();
+        }
+    }
+}
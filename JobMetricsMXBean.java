@@ -0,0 +1,34 @@
+import java.util.Map;
+
+/**
+ * Management interface of JobMetrics, exposed through JMX while a job runs.
+ */
+public interface JobMetricsMXBean {
+    long getMapTasks();
+
+    long getBytesRead();
+
+    long getWordsTokenized();
+
+    long getBoundaryMillis();
+
+    long getTokenizeMillis();
+
+    long getFragmentLatencyP50Micros();
+
+    long getFragmentLatencyP99Micros();
+
+    long getReduceTasks();
+
+    long getReduceMergeMillis();
+
+    int getQueueDepth();
+
+    long getMaxQueueDepth();
+
+    int getActiveThreads();
+
+    double getUtilization();
+
+    Map<String, Long> getPhaseMillis();
+}
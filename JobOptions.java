@@ -0,0 +1,518 @@
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Optional settings of a job, given on the command line after the mandatory arguments as --name=value.
+ */
+public class JobOptions {
+    static final String USAGE = "Options:\n" +
+            "  --job=rank|words|chars    computation run over the words of the files\n" +
+            "  --engine=executor|pipeline|forkjoin|virtual|combiner|generic|distributed\n" +
+            "  --max-open-files=N        fragments read at the same time (virtual engine)\n" +
+            "  --max-inflight-bytes=N    bytes of the fragments read at the same time (virtual engine)\n" +
+            "  --max-longest-words=N     distinct longest words kept per file\n" +
+            "  --rank-weight=fibonacci|length  weight of a word in the rang of a file\n" +
+            "  --spill-dir=DIR           write Map results to segment files in DIR (executor engine)\n" +
+            "  --memory-budget=N         bytes of Map results kept in memory before spilling\n" +
+            "  --cache-dir=DIR           reuse the results of unchanged files from DIR (executor engine)\n" +
+            "  --cache-size=N            bytes the cache may take on disk\n" +
+            "  --metrics=FILE            write a JSON summary of the job metrics to FILE\n" +
+            "  --reducers=N              partitions and Reduce tasks of the generic engine (default: workers)\n" +
+            "  --top=N                   write only the N lines with the best rang\n" +
+            "  --schedule=largest-first|manifest  order in which fragments are submitted\n" +
+            "  --stat-threads=N          threads reading the sizes of the input files\n" +
+            "  --max-pending-fragments=N fragments submitted and not yet mapped (default: max(1024, 4 x workers))\n" +
+            "  --max-pending-bytes=N     bytes of the fragments submitted and not yet mapped\n" +
+            "  --rank-index=FILE         write a binary index of the output lines, read by MapReduce index\n" +
+            "  --jmx=true|false          register the job metrics with JMX (default: if jmxremote is enabled)\n" +
+            "Distributed engine options:\n" +
+            "  --spawn-workers=N         worker processes started on this machine, each with <workers> threads\n" +
+            "  --remote-workers=N        worker processes started separately with MapReduce worker\n" +
+            "  --coordinator-port=N      port on which the workers connect (default: any free port)\n" +
+            "  --worker-timeout=MS       time after which a silent worker is considered lost\n" +
+            "Server options:\n" +
+            "  --spool-dir=DIR           run the *.job input files dropped in DIR\n" +
+            "  --port=N                  run the input files sent to a loopback socket on port N\n" +
+            "  --max-concurrent-jobs=N   jobs run at the same time\n" +
+            "  --job-workers=N           tasks of one job run at the same time";
+
+    /**
+     * Ways of running the Map and Reduce operations.
+     */
+    enum Engine {
+        /**
+         * All Map tasks finish before the Reduce tasks start.
+         */
+        EXECUTOR,
+        /**
+         * Each Map result is merged into the Reduce state of its file as soon as it is computed.
+         */
+        PIPELINE,
+        /**
+         * Each file is split recursively on a work-stealing pool, Map and Reduce being fused per file.
+         */
+        FORKJOIN,
+        /**
+         * Like PIPELINE, but every task runs on its own virtual thread and the I/O is bounded by maxOpenFiles and
+         * maxInFlightBytes instead of by the number of workers.
+         */
+        VIRTUAL,
+        /**
+         * Like PIPELINE, but the Map results are added to lock-free per-file counters instead of being merged under a
+         * lock, so the Reduce operation only computes the rang.
+         */
+        COMBINER,
+        /**
+         * Runs any job through its Mapper, Combiner and Reducer. The jobs other than RANK always run on this engine.
+         */
+        GENERIC,
+        /**
+         * The Map tasks run in worker processes connected over loopback sockets, the Reduce operations in this
+         * process as the results arrive.
+         */
+        DISTRIBUTED
+    }
+
+    /**
+     * Computations which can be run over the words of the files.
+     */
+    enum JobType {
+        /**
+         * Files ranked by the weights of the lengths of their words.
+         */
+        RANK,
+        /**
+         * Number of occurrences of each word.
+         */
+        WORDS,
+        /**
+         * Number of lowercase letters, uppercase letters and digits.
+         */
+        CHARS
+    }
+
+    private JobType jobType = JobType.RANK;
+    private Engine engine = Engine.EXECUTOR;
+    private int maxOpenFiles = 256;
+    private long maxInFlightBytes = 256 * 1024 * 1024;
+    private int maxLongestWords = LongestWords.DEFAULT_CAPACITY;
+    private RankWeights rankWeights = RankWeights.of(RankWeight.FIBONACCI);
+    private Path spillDirectory;
+    private long memoryBudget = 64L * 1024 * 1024;
+    private Path cacheDirectory;
+    private long cacheSize = 1024L * 1024 * 1024;
+    private Path metricsFile;
+    private int topN;
+    private int reducers;
+    private boolean largestFirst = true;
+    private int statThreads = 16;
+    private Path spoolDirectory;
+    private int port = -1;
+    private int maxConcurrentJobs = 4;
+    private int jobWorkers;
+    private int spawnWorkers;
+    private int remoteWorkers;
+    private int coordinatorPort;
+    private int workerTimeout = 60000;
+    private int maxPendingFragments;
+    private long maxPendingBytes = 1024 * 1024 * 1024;
+    private Path rankIndex;
+    private boolean jmx = System.getProperty("com.sun.management.jmxremote") != null;
+
+    /**
+     * Function that parses the optional arguments.
+     * @param args - command line arguments.
+     * @param from - index of the first optional argument.
+     * @return - the parsed options.
+     */
+    public static JobOptions parse(String[] args, int from) {
+        JobOptions options = new JobOptions();
+
+        for (int i = from; i < args.length; i++) {
+            String arg = args[i];
+            int separator = arg.indexOf('=');
+            if (!arg.startsWith("--") || separator < 0) {
+                throw new IllegalArgumentException("Invalid option: " + arg);
+            }
+
+            String name = arg.substring(2, separator);
+            String value = arg.substring(separator + 1);
+            switch (name) {
+                case "job":
+                    options.jobType = JobType.valueOf(value.toUpperCase());
+                    break;
+                case "engine":
+                    options.engine = Engine.valueOf(value.toUpperCase());
+                    break;
+                case "max-open-files":
+                    options.maxOpenFiles = Integer.parseInt(value);
+                    break;
+                case "max-inflight-bytes":
+                    options.maxInFlightBytes = Long.parseLong(value);
+                    break;
+                case "max-longest-words":
+                    options.maxLongestWords = Integer.parseInt(value);
+                    break;
+                case "rank-weight":
+                    options.rankWeights = RankWeights.of(parseRankWeight(value));
+                    break;
+                case "spill-dir":
+                    options.spillDirectory = Paths.get(value);
+                    break;
+                case "memory-budget":
+                    options.memoryBudget = Long.parseLong(value);
+                    break;
+                case "cache-dir":
+                    options.cacheDirectory = Paths.get(value);
+                    break;
+                case "cache-size":
+                    options.cacheSize = Long.parseLong(value);
+                    break;
+                case "metrics":
+                    options.metricsFile = Paths.get(value);
+                    break;
+                case "reducers":
+                    options.reducers = Integer.parseInt(value);
+                    break;
+                case "top":
+                    options.topN = Integer.parseInt(value);
+                    break;
+                case "schedule":
+                    options.largestFirst = parseSchedule(value);
+                    break;
+                case "stat-threads":
+                    options.statThreads = Integer.parseInt(value);
+                    break;
+                case "spool-dir":
+                    options.spoolDirectory = Paths.get(value);
+                    break;
+                case "port":
+                    options.port = Integer.parseInt(value);
+                    break;
+                case "max-concurrent-jobs":
+                    options.maxConcurrentJobs = Integer.parseInt(value);
+                    break;
+                case "job-workers":
+                    options.jobWorkers = Integer.parseInt(value);
+                    break;
+                case "spawn-workers":
+                    options.spawnWorkers = Integer.parseInt(value);
+                    break;
+                case "remote-workers":
+                    options.remoteWorkers = Integer.parseInt(value);
+                    break;
+                case "coordinator-port":
+                    options.coordinatorPort = Integer.parseInt(value);
+                    break;
+                case "worker-timeout":
+                    options.workerTimeout = Integer.parseInt(value);
+                    break;
+                case "max-pending-fragments":
+                    options.maxPendingFragments = Integer.parseInt(value);
+                    break;
+                case "max-pending-bytes":
+                    options.maxPendingBytes = Long.parseLong(value);
+                    break;
+                case "rank-index":
+                    options.rankIndex = Paths.get(value);
+                    break;
+                case "jmx":
+                    options.jmx = Boolean.parseBoolean(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + name);
+            }
+        }
+
+        return options;
+    }
+
+    /**
+     * Function that parses the order in which fragments are submitted.
+     * @param name - name of the order.
+     * @return - true for largest-first, false for the order of the input file.
+     */
+    private static boolean parseSchedule(String name) {
+        switch (name) {
+            case "largest-first":
+                return true;
+            case "manifest":
+                return false;
+            default:
+                throw new IllegalArgumentException("Unknown schedule: " + name);
+        }
+    }
+
+    /**
+     * Function that returns the weight function with the given name.
+     * @param name - name of the function.
+     * @return - the weight function.
+     */
+    private static RankWeight parseRankWeight(String name) {
+        switch (name) {
+            case "fibonacci":
+                return RankWeight.FIBONACCI;
+            case "length":
+                return RankWeight.LENGTH;
+            default:
+                throw new IllegalArgumentException("Unknown rank weight: " + name);
+        }
+    }
+
+    public Engine getEngine() {
+        return engine;
+    }
+
+    public void setEngine(Engine engine) {
+        this.engine = engine;
+    }
+
+    public int getMaxOpenFiles() {
+        return maxOpenFiles;
+    }
+
+    public void setMaxOpenFiles(int maxOpenFiles) {
+        this.maxOpenFiles = maxOpenFiles;
+    }
+
+    public long getMaxInFlightBytes() {
+        return maxInFlightBytes;
+    }
+
+    public void setMaxInFlightBytes(long maxInFlightBytes) {
+        this.maxInFlightBytes = maxInFlightBytes;
+    }
+
+    public int getMaxLongestWords() {
+        return maxLongestWords;
+    }
+
+    public void setMaxLongestWords(int maxLongestWords) {
+        this.maxLongestWords = maxLongestWords;
+    }
+
+    public RankWeights getRankWeights() {
+        return rankWeights;
+    }
+
+    public void setRankWeights(RankWeights rankWeights) {
+        this.rankWeights = rankWeights;
+    }
+
+    public Path getSpillDirectory() {
+        return spillDirectory;
+    }
+
+    public void setSpillDirectory(Path spillDirectory) {
+        this.spillDirectory = spillDirectory;
+    }
+
+    public long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    public void setMemoryBudget(long memoryBudget) {
+        this.memoryBudget = memoryBudget;
+    }
+
+    public Path getCacheDirectory() {
+        return cacheDirectory;
+    }
+
+    public void setCacheDirectory(Path cacheDirectory) {
+        this.cacheDirectory = cacheDirectory;
+    }
+
+    public long getCacheSize() {
+        return cacheSize;
+    }
+
+    public void setCacheSize(long cacheSize) {
+        this.cacheSize = cacheSize;
+    }
+
+    public Path getMetricsFile() {
+        return metricsFile;
+    }
+
+    public void setMetricsFile(Path metricsFile) {
+        this.metricsFile = metricsFile;
+    }
+
+    public Path getSpoolDirectory() {
+        return spoolDirectory;
+    }
+
+    public void setSpoolDirectory(Path spoolDirectory) {
+        this.spoolDirectory = spoolDirectory;
+    }
+
+    /**
+     * @return - port of the job socket, or -1 if the server does not listen on a socket.
+     */
+    public int getPort() {
+        return port;
+    }
+
+    public void setPort(int port) {
+        this.port = port;
+    }
+
+    public int getMaxConcurrentJobs() {
+        return maxConcurrentJobs;
+    }
+
+    public void setMaxConcurrentJobs(int maxConcurrentJobs) {
+        this.maxConcurrentJobs = maxConcurrentJobs;
+    }
+
+    /**
+     * @return - tasks of one job which may run at the same time, or 0 to let a job use all the workers.
+     */
+    public int getJobWorkers() {
+        return jobWorkers;
+    }
+
+    public void setJobWorkers(int jobWorkers) {
+        this.jobWorkers = jobWorkers;
+    }
+
+    /**
+     * @return - number of files written to the output, best rang first, or 0 to write all of them.
+     */
+    public int getTopN() {
+        return topN;
+    }
+
+    public void setTopN(int topN) {
+        this.topN = topN;
+    }
+
+    /**
+     * @return - true to submit the largest fragments and files first, false to keep the order of the input file.
+     */
+    public boolean isLargestFirst() {
+        return largestFirst;
+    }
+
+    public void setLargestFirst(boolean largestFirst) {
+        this.largestFirst = largestFirst;
+    }
+
+    public int getStatThreads() {
+        return statThreads;
+    }
+
+    public void setStatThreads(int statThreads) {
+        this.statThreads = statThreads;
+    }
+
+    public JobType getJobType() {
+        return jobType;
+    }
+
+    public void setJobType(JobType jobType) {
+        this.jobType = jobType;
+    }
+
+    /**
+     * @return - number of partitions and Reduce tasks of the generic engine, or 0 for one per worker.
+     */
+    public int getReducers() {
+        return reducers;
+    }
+
+    public void setReducers(int reducers) {
+        this.reducers = reducers;
+    }
+
+    /**
+     * @return - number of worker processes the distributed engine starts on this machine.
+     */
+    public int getSpawnWorkers() {
+        return spawnWorkers;
+    }
+
+    public void setSpawnWorkers(int spawnWorkers) {
+        this.spawnWorkers = spawnWorkers;
+    }
+
+    /**
+     * @return - number of worker processes, started separately, the distributed engine waits for.
+     */
+    public int getRemoteWorkers() {
+        return remoteWorkers;
+    }
+
+    public void setRemoteWorkers(int remoteWorkers) {
+        this.remoteWorkers = remoteWorkers;
+    }
+
+    /**
+     * @return - port on which the workers of the distributed engine connect, or 0 for any free port.
+     */
+    public int getCoordinatorPort() {
+        return coordinatorPort;
+    }
+
+    public void setCoordinatorPort(int coordinatorPort) {
+        this.coordinatorPort = coordinatorPort;
+    }
+
+    /**
+     * @return - milliseconds after which a worker which does not connect or does not answer is considered lost.
+     */
+    public int getWorkerTimeout() {
+        return workerTimeout;
+    }
+
+    public void setWorkerTimeout(int workerTimeout) {
+        this.workerTimeout = workerTimeout;
+    }
+
+    /**
+     * @return - number of fragments the executor, pipeline, combiner and generic engines submit ahead of the workers,
+     * or 0 for 1024 and at least four per worker.
+     */
+    public int getMaxPendingFragments() {
+        return maxPendingFragments;
+    }
+
+    public void setMaxPendingFragments(int maxPendingFragments) {
+        this.maxPendingFragments = maxPendingFragments;
+    }
+
+    /**
+     * @return - bytes of the fragments the executor, pipeline, combiner and generic engines submit ahead of the
+     * workers.
+     */
+    public long getMaxPendingBytes() {
+        return maxPendingBytes;
+    }
+
+    public void setMaxPendingBytes(long maxPendingBytes) {
+        this.maxPendingBytes = maxPendingBytes;
+    }
+
+    /**
+     * @return - file to which the index of the output lines is written, or null.
+     */
+    public Path getRankIndex() {
+        return rankIndex;
+    }
+
+    public void setRankIndex(Path rankIndex) {
+        this.rankIndex = rankIndex;
+    }
+
+    /**
+     * @return - whether the metrics of the jobs are registered with the platform MBean server.
+     */
+    public boolean isJmx() {
+        return jmx;
+    }
+
+    public void setJmx(boolean jmx) {
+        this.jmx = jmx;
+    }
+}
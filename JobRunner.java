@@ -0,0 +1,300 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Generic engine, which runs any Job over the files of a manifest. Every fragment is cut at word boundaries and
+ * scanned by a new Mapper of the job on the executor, the fragments being submitted by a FragmentScheduler within the
+ * same bounds as on the executor engine; its records are combined by key, then split by the hash of
+ * their key into one buffer per partition, each buffer allocated once with the exact number of records of its
+ * partition. Once all fragments are mapped, one Reduce task per partition combines the records of its partition
+ * across fragments and reduces its keys, so the number of Reduce tasks depends only on the number of partitions and
+ * not on the number of files. A file without fragments is still given a Mapper, which sees no words.
+ *
+ * The output records are put back in the order in which their keys first appear in the files, so equal ranks are
+ * written in the same order whatever the number of partitions.
+ * @param <K> - type of the keys of the intermediate records.
+ * @param <V> - type of their values.
+ */
+class JobRunner<K, V> {
+    private final Job<K, V> job;
+    private final Manifest manifest;
+    private final JobOptions options;
+    private final int partitions;
+    private final JobMetrics metrics;
+
+    /**
+     * @param job - the job.
+     * @param manifest - fragment size, names and sizes of the files to be processed.
+     * @param options - optional settings of the job.
+     * @param partitions - number of partitions of the intermediate records, and of Reduce tasks.
+     * @param metrics - counters of the job.
+     */
+    public JobRunner(Job<K, V> job, Manifest manifest, JobOptions options, int partitions, JobMetrics metrics) {
+        this.job = job;
+        this.manifest = manifest;
+        this.options = options;
+        this.partitions = Math.max(1, partitions);
+        this.metrics = metrics;
+    }
+
+    /**
+     * Function that runs the job.
+     * @param executor - executor on which the Map and Reduce tasks run. It is shut down once they are finished.
+     * @param pending - bounds of the fragments submitted and not yet mapped.
+     * @return - the output lines, in the order in which their keys first appear in the files.
+     * @throws IOException
+     */
+    public List<OutputRecord> run(ExecutorService executor, IoLimiter pending) throws IOException {
+        try {
+            long phaseStart = System.nanoTime();
+            List<MapOutput> mapOutputs = map(executor, pending);
+            metrics.recordPhase("map", phaseStart);
+
+            phaseStart = System.nanoTime();
+            List<Future<List<OutputRecord>>> reduceOutputs = new ArrayList<>();
+            for (int partition = 0; partition < partitions; partition++) {
+                int index = partition;
+                reduceOutputs.add(executor.submit(() -> reduce(mapOutputs, index)));
+            }
+            List<OutputRecord> output = new ArrayList<>();
+            for (Future<List<OutputRecord>> reduceOutput : reduceOutputs) {
+                output.addAll(reduceOutput.get());
+            }
+            output.sort(Comparator.comparingLong(OutputRecord::getOrder));
+            metrics.recordPhase("reduce", phaseStart);
+
+            return output;
+        } catch (InterruptedException | ExecutionException e) {
+            throw new IOException("Job failed", e);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Function that runs the Map tasks, in the order of the schedule, and waits until they are finished. The
+     * fragments are submitted as the workers take them, so only a bounded number of them are queued at any time.
+     * @param executor - executor on which the Map tasks run.
+     * @param pending - bounds of the fragments submitted and not yet mapped.
+     * @return - the outputs of the fragments, in the order of the files and of the fragments in each file.
+     * @throws IOException - if a Map task failed.
+     */
+    private List<MapOutput> map(ExecutorService executor, IoLimiter pending) throws IOException {
+        List<String> fileNames = manifest.getFiles();
+        int[] firstSequence = new int[fileNames.size() + 1];
+        for (int fileId = 0; fileId < fileNames.size(); fileId++) {
+            firstSequence[fileId + 1] = firstSequence[fileId] + Math.max(1, manifest.getFragmentCount(fileId));
+        }
+
+        List<MapOutput> mapOutputs = new ArrayList<>(Collections.nCopies(firstSequence[fileNames.size()], null));
+        for (int fileId = 0; fileId < fileNames.size(); fileId++) {
+            if (manifest.getFragmentCount(fileId) == 0) {
+                Map<K, V> records = new LinkedHashMap<>();
+                finish(job.newMapper(fileNames.get(fileId)), records);
+                int sequence = firstSequence[fileId];
+                mapOutputs.set(sequence, new MapOutput(sequence, records));
+            }
+        }
+
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        try {
+            new FragmentScheduler(pending).run(manifest.fragments(options.isLargestFirst()), executor, fragment -> {
+                if (failure.get() != null) {
+                    return;
+                }
+                int sequence = firstSequence[fragment.fileId] +
+                        (int) (fragment.startPos / manifest.getFragmentLength());
+                try {
+                    mapOutputs.set(sequence, map(fragment, sequence));
+                } catch (Exception e) {
+                    failure.compareAndSet(null, new IOException("Map operation on " +
+                            fileNames.get(fragment.fileId) + " failed", e));
+                }
+            });
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failure.compareAndSet(null, new IOException("Interrupted while submitting the Map operations", e));
+        }
+        if (failure.get() != null) {
+            throw (IOException) failure.get();
+        }
+        return mapOutputs;
+    }
+
+    /**
+     * Function that maps one fragment, or a whole compressed file which cannot be split.
+     * @param fragment - the fragment.
+     * @param sequence - index of the fragment in the order of the files.
+     * @return - the records of the fragment, combined by key and split by partition.
+     * @throws IOException
+     */
+    private MapOutput map(Manifest.Fragment fragment, int sequence) throws IOException {
+        long start = System.nanoTime();
+        String filename = manifest.getFiles().get(fragment.fileId);
+        Mapper<K, V> mapper = job.newMapper(filename);
+        long[] words = new long[1];
+        WordScanner.WordConsumer consumer = (fileReader, wordStart, wordEnd) -> {
+            words[0]++;
+            mapper.word(fileReader, wordStart, wordEnd);
+        };
+
+        long bytes;
+        long adjusted;
+        if (CompressedInput.isSplittable(filename)) {
+            try (FragmentReader reader = FragmentReader.forFragment(filename, fragment.startPos,
+                    fragment.startPos + fragment.length)) {
+                long startPos = reader.adjustStartPos(fragment.startPos);
+                long endPos = reader.adjustEndPos(fragment.startPos + fragment.length);
+                adjusted = System.nanoTime();
+                WordScanner.scan(reader, startPos, endPos, consumer);
+                bytes = Math.max(endPos - startPos, 0);
+            }
+        } else {
+            adjusted = start;
+            bytes = CompressedInput.forFile(filename).scanStream(consumer);
+        }
+        Map<K, V> records = new LinkedHashMap<>();
+        finish(mapper, records);
+        MapOutput output = new MapOutput(sequence, records);
+        metrics.recordMapTask(bytes, words[0], adjusted - start, System.nanoTime() - adjusted);
+
+        return output;
+    }
+
+    /**
+     * Function that collects the records of a Mapper, combining the records of the same key.
+     * @param mapper - the Mapper, after the last word of its fragment.
+     * @param records - map to which the records are added.
+     */
+    private void finish(Mapper<K, V> mapper, Map<K, V> records) {
+        Combiner<V> combiner = job.getCombiner();
+        mapper.finish((key, value) -> records.merge(key, value, combiner::combine));
+    }
+
+    /**
+     * Function that reduces one partition. The records are combined in the order of the fragments, so a key keeps the
+     * position where it first appears.
+     * @param mapOutputs - the outputs of all the fragments.
+     * @param partition - index of the partition.
+     * @return - the output lines of the partition.
+     * @throws Exception
+     */
+    private List<OutputRecord> reduce(List<MapOutput> mapOutputs, int partition) throws Exception {
+        long start = System.nanoTime();
+        Combiner<V> combiner = job.getCombiner();
+        long records = 0;
+        for (MapOutput mapOutput : mapOutputs) {
+            records += mapOutput.keys[partition].length;
+        }
+
+        /**
+         * The keys of different fragments are mostly distinct, so the map is sized for all the records of the
+         * partition and never rehashes.
+         */
+        Map<K, Combined<V>> combined = new LinkedHashMap<>((int) Math.min(records * 4 / 3 + 1, 1 << 30));
+        for (MapOutput output : mapOutputs) {
+            K[] keys = output.keys[partition];
+            V[] values = output.values[partition];
+            int[] indexes = output.indexes[partition];
+            for (int i = 0; i < keys.length; i++) {
+                Combined<V> record = combined.get(keys[i]);
+                if (record == null) {
+                    combined.put(keys[i], new Combined<>(values[i], (long) output.sequence << 32 | indexes[i]));
+                } else {
+                    record.value = combiner.combine(record.value, values[i]);
+                }
+            }
+        }
+        metrics.recordReduceTask(System.nanoTime() - start);
+
+        List<OutputRecord> output = new ArrayList<>(combined.size());
+        Reducer<K, V> reducer = job.getReducer();
+        for (Map.Entry<K, Combined<V>> record : combined.entrySet()) {
+            long order = record.getValue().order;
+            reducer.reduce(record.getKey(), record.getValue().value,
+                    (rank, length, name, line) -> output.add(new OutputRecord(rank, length, name, line, order)));
+        }
+        return output;
+    }
+
+    /**
+     * Function that returns the partition of a key. The bits of the hash are spread as in HashMap, so keys whose hashes
+     * differ only in their high bits are not all sent to the same partition.
+     * @param key - the key.
+     * @return - the partition, between 0 and partitions - 1.
+     */
+    private int partition(K key) {
+        int hash = key.hashCode();
+        return Math.floorMod(hash ^ (hash >>> 16), partitions);
+    }
+
+    /**
+     * Records of one fragment, split by partition. Each record also keeps its index among the records of the
+     * fragment, so the order of first appearance of the keys can be restored after the Reduce tasks.
+     */
+    private class MapOutput {
+        final int sequence;
+        final K[][] keys;
+        final V[][] values;
+        final int[][] indexes;
+
+        /**
+         * @param sequence - index of the fragment in the order of the files.
+         * @param records - records of the fragment, combined by key, in emission order.
+         */
+        @SuppressWarnings("unchecked")
+        MapOutput(int sequence, Map<K, V> records) {
+            this.sequence = sequence;
+            int[] partitionOf = new int[records.size()];
+            int[] sizes = new int[partitions];
+            int index = 0;
+            for (K key : records.keySet()) {
+                partitionOf[index] = partition(key);
+                sizes[partitionOf[index]]++;
+                index++;
+            }
+
+            keys = (K[][]) new Object[partitions][];
+            values = (V[][]) new Object[partitions][];
+            indexes = new int[partitions][];
+            for (int partition = 0; partition < partitions; partition++) {
+                keys[partition] = (K[]) new Object[sizes[partition]];
+                values[partition] = (V[]) new Object[sizes[partition]];
+                indexes[partition] = new int[sizes[partition]];
+            }
+
+            int[] filled = new int[partitions];
+            index = 0;
+            for (Map.Entry<K, V> record : records.entrySet()) {
+                int partition = partitionOf[index];
+                keys[partition][filled[partition]] = record.getKey();
+                values[partition][filled[partition]] = record.getValue();
+                indexes[partition][filled[partition]] = index;
+                filled[partition]++;
+                index++;
+            }
+        }
+    }
+
+    /**
+     * Value of a key combined across fragments, with the position where the key first appears.
+     */
+    private static class Combined<V> {
+        V value;
+        final long order;
+
+        Combined(V value, long order) {
+            this.value = value;
+            this.order = order;
+        }
+    }
+}
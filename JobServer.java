@@ -0,0 +1,255 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Long-running mode in which many jobs share one JVM and one pool of workers. Jobs are input files in the usual
+ * format, taken from a spool directory or read from a loopback socket. At most maxConcurrentJobs jobs run at the same
+ * time; the others wait in the spool directory or on their connection. The tasks of the running jobs are interleaved
+ * on the workers by a FairWorkerPool.
+ *
+ * Spool directory: a file NAME.job is claimed by renaming it to NAME.running. Its results are written to NAME.out and
+ * its metrics to NAME.metrics.json, then it is renamed to NAME.done; if the job fails it is renamed to NAME.failed and
+ * the error is written to NAME.err. Files should be written under another name and renamed to NAME.job once complete.
+ *
+ * The settings of the server are used for every job, so --rank-index, which names a single file, is refused.
+ *
+ * Socket: a client sends an input file (fragment size, number of files, one file per line) and receives the result
+ * lines, or a single line starting with ERROR, before the server closes the connection.
+ */
+class JobServer {
+    private static final long SPOOL_POLL_MILLIS = 100;
+
+    private final JobOptions options;
+    private final FairWorkerPool pool;
+    private final int jobWorkers;
+    private final Semaphore jobSlots;
+    private final ExecutorService jobRunners = Executors.newCachedThreadPool();
+
+    /**
+     * @param workers - number of worker threads shared by all jobs.
+     * @param options - settings of the server, also used for every job.
+     */
+    public JobServer(int workers, JobOptions options) {
+        if (options.getSpoolDirectory() == null && options.getPort() < 0) {
+            throw new IllegalArgumentException("Server mode needs --spool-dir or --port");
+        }
+        if (options.getRankIndex() != null) {
+            throw new IllegalArgumentException("--rank-index names a single file, which every job of the server " +
+                    "would overwrite");
+        }
+        this.options = options;
+        this.pool = new FairWorkerPool(workers);
+        this.jobWorkers = options.getJobWorkers() > 0 ? Math.min(options.getJobWorkers(), workers) : workers;
+        this.jobSlots = new Semaphore(Math.max(1, options.getMaxConcurrentJobs()), true);
+    }
+
+    /**
+     * Function that serves jobs until the process is stopped.
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public void run() throws IOException, InterruptedException {
+        List<Thread> listeners = new ArrayList<>();
+        if (options.getSpoolDirectory() != null) {
+            Files.createDirectories(options.getSpoolDirectory());
+            listeners.add(startListener("spool", this::pollSpool));
+        }
+        if (options.getPort() >= 0) {
+            ServerSocket serverSocket = new ServerSocket(options.getPort(), 50, InetAddress.getLoopbackAddress());
+            System.err.println("Listening on " + serverSocket.getLocalSocketAddress());
+            listeners.add(startListener("accept", () -> accept(serverSocket)));
+        }
+
+        for (Thread listener : listeners) {
+            listener.join();
+        }
+    }
+
+    /**
+     * Function that runs one job on the shared workers.
+     * @param inputFile - input file of the job.
+     * @param metrics - counters of the job.
+     * @param sink - receives the results.
+     * @throws IOException
+     */
+    private void runJob(String inputFile, JobMetrics metrics, MapReduce.ResultSink sink) throws IOException {
+        MapReduce.runJob(jobWorkers, inputFile, options, () -> pool.newJobExecutor(jobWorkers), metrics, sink);
+    }
+
+    /**
+     * Function that claims the jobs of the spool directory, in name order, as long as there are free job slots.
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    private void pollSpool() throws IOException, InterruptedException {
+        Path spool = options.getSpoolDirectory();
+        while (true) {
+            List<Path> jobs = new ArrayList<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(spool, "*.job")) {
+                for (Path job : stream) {
+                    jobs.add(job);
+                }
+            }
+            Collections.sort(jobs);
+
+            for (Path job : jobs) {
+                jobSlots.acquire();
+                String name = job.getFileName().toString();
+                name = name.substring(0, name.length() - ".job".length());
+                Path running = spool.resolve(name + ".running");
+                try {
+                    Files.move(job, running, StandardCopyOption.ATOMIC_MOVE);
+                } catch (IOException e) {
+                    jobSlots.release();
+                    continue;
+                }
+
+                String jobName = name;
+                jobRunners.execute(() -> {
+                    try {
+                        runSpooledJob(spool, jobName, running);
+                    } finally {
+                        jobSlots.release();
+                    }
+                });
+            }
+
+            Thread.sleep(SPOOL_POLL_MILLIS);
+        }
+    }
+
+    /**
+     * Function that runs a job claimed from the spool directory and publishes its results.
+     * @param spool - the spool directory.
+     * @param name - name of the job.
+     * @param running - the claimed input file.
+     */
+    private void runSpooledJob(Path spool, String name, Path running) {
+        JobMetrics metrics = new JobMetrics(true);
+        try {
+            Path temporary = spool.resolve(name + ".out.tmp");
+            runJob(running.toString(), metrics, output -> MapReduce.writeToFile(temporary.toString(), output));
+            Files.move(temporary, spool.resolve(name + ".out"), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            metrics.writeSummary(spool.resolve(name + ".metrics.json"));
+            Files.move(running, spool.resolve(name + ".done"), StandardCopyOption.REPLACE_EXISTING);
+        } catch (Exception e) {
+            try {
+                Files.write(spool.resolve(name + ".err"), String.valueOf(e).getBytes(StandardCharsets.UTF_8));
+                Files.move(running, spool.resolve(name + ".failed"), StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Function that accepts the connections of the job socket. Each connection is served by its own thread, which
+     * waits for a free job slot once the input file has been received.
+     * @param serverSocket - the listening socket.
+     * @throws IOException
+     */
+    private void accept(ServerSocket serverSocket) throws IOException {
+        while (true) {
+            Socket socket = serverSocket.accept();
+            jobRunners.execute(() -> {
+                try (Socket connection = socket) {
+                    serveConnection(connection);
+                } catch (IOException | InterruptedException e) {
+                    e.printStackTrace();
+                }
+            });
+        }
+    }
+
+    /**
+     * Function that reads an input file from a connection, runs it and sends back the results.
+     * @param socket - the connection.
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    private void serveConnection(Socket socket) throws IOException, InterruptedException {
+        BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(),
+                StandardCharsets.UTF_8));
+        BufferedWriter out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(),
+                StandardCharsets.UTF_8));
+        Path inputFile = Files.createTempFile("mapreduce-job-", ".txt");
+
+        try {
+            List<String> lines = new ArrayList<>();
+            String fragmentLength = in.readLine();
+            String numberOfLines = in.readLine();
+            if (fragmentLength == null || numberOfLines == null) {
+                throw new IOException("Incomplete input file");
+            }
+            lines.add(fragmentLength);
+            lines.add(numberOfLines);
+            for (int index = Integer.parseInt(numberOfLines.trim()); index > 0; index--) {
+                String line = in.readLine();
+                if (line == null) {
+                    throw new IOException("Incomplete input file");
+                }
+                lines.add(line);
+            }
+            Files.write(inputFile, lines, StandardCharsets.UTF_8);
+
+            jobSlots.acquire();
+            try {
+                runJob(inputFile.toString(), new JobMetrics(),
+                        output -> ResultWriter.write(Channels.newChannel(socket.getOutputStream()), output));
+            } finally {
+                jobSlots.release();
+            }
+        } catch (IOException | RuntimeException e) {
+            out.write("ERROR " + e);
+            out.newLine();
+            out.flush();
+        } finally {
+            Files.deleteIfExists(inputFile);
+        }
+    }
+
+    /**
+     * Function that starts a thread which runs a listener of the server.
+     * @param name - name of the thread.
+     * @param listener - the listener.
+     * @return - the thread.
+     */
+    private static Thread startListener(String name, Listener listener) {
+        Thread thread = new Thread(() -> {
+            try {
+                listener.run();
+            } catch (IOException | InterruptedException e) {
+                e.printStackTrace();
+            }
+        }, name);
+        thread.start();
+        return thread;
+    }
+
+    /**
+     * Loop of a listener of the server.
+     */
+    private interface Listener {
+        void run() throws IOException, InterruptedException;
+    }
+}
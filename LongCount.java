@@ -0,0 +1,25 @@
+/**
+ * Mutable long value of intermediate records, so counting jobs can add to their counts without boxing.
+ */
+class LongCount {
+    /**
+     * Combiner adding the counts of the same key.
+     */
+    static final Combiner<LongCount> SUM = (into, other) -> {
+        into.value += other.value;
+        return into;
+    };
+
+    long value;
+
+    public LongCount() {
+    }
+
+    public LongCount(long value) {
+        this.value = value;
+    }
+
+    public long get() {
+        return value;
+    }
+}
@@ -0,0 +1,104 @@
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * The longest words of a text: the maximum word length and at most capacity distinct words having that length.
+ * Two accumulators are merged in time linear in their sizes, without sorting.
+ */
+public class LongestWords {
+    public static final int DEFAULT_CAPACITY = 16;
+
+    private final int capacity;
+    private final Set<String> words;
+    private int length;
+
+    public LongestWords() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public LongestWords(int capacity) {
+        this.capacity = capacity;
+        this.words = new LinkedHashSet<>();
+    }
+
+    /**
+     * Function that checks whether a word of the given length would change the accumulator. It is used to avoid
+     * creating strings for words that would be dropped anyway.
+     * @param wordLength - length of the word.
+     * @return - true if the word has to be added.
+     */
+    public boolean accepts(int wordLength) {
+        return wordLength > length || (wordLength == length && words.size() < capacity);
+    }
+
+    /**
+     * Function that adds a word.
+     * @param word - the word.
+     */
+    public void add(String word) {
+        if (word.length() > length) {
+            length = word.length();
+            words.clear();
+        }
+        if (word.length() == length && words.size() < capacity) {
+            words.add(word);
+        }
+    }
+
+    /**
+     * Function that adds the words of another accumulator to this one.
+     * @param other - accumulator to be merged.
+     */
+    public void merge(LongestWords other) {
+        if (other.length > length) {
+            length = other.length;
+            words.clear();
+        }
+        if (other.length == length) {
+            for (String word : other.words) {
+                if (words.size() == capacity) {
+                    break;
+                }
+                words.add(word);
+            }
+        }
+    }
+
+    /**
+     * @return - the maximum word length, or 0 if no word was added.
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * @return - the distinct words having the maximum length, in the order they were added.
+     */
+    public Set<String> getWords() {
+        return Collections.unmodifiableSet(words);
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        LongestWords that = (LongestWords) o;
+        return length == that.length && Objects.equals(words, that.words);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(words, length);
+    }
+
+    @Override
+    public String toString() {
+        return words.toString();
+    }
+}
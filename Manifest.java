@@ -0,0 +1,344 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Content of an input file: the fragment size followed by the number of files and one file name per line, together
+ * with the size of every file. The sizes are read by several threads at once, since on a slow filesystem each of them
+ * can take as long as mapping a small fragment.
+ *
+ * The size of a compressed file is the size of its content, read from the index of its blocks; a compressed file
+ * which cannot be split is planned as a single fragment.
+ *
+ * A manifest retains the shared readers of its files for its job, from the time it is read until each file is
+ * released, so jobs running at the same time never drop the readers of each other.
+ */
+class Manifest {
+    private final long fragmentLength;
+    private final List<String> files;
+    private final long[] sizes;
+    private final boolean[] splittable;
+    private final AtomicIntegerArray retained;
+
+    private Manifest(long fragmentLength, List<String> files, long[] sizes, boolean[] splittable,
+                     AtomicIntegerArray retained) {
+        this.fragmentLength = fragmentLength;
+        this.files = files;
+        this.sizes = sizes;
+        this.splittable = splittable;
+        this.retained = retained;
+    }
+
+    /**
+     * Function that reads an input file and the sizes of the files it names.
+     * @param inputFile - name of the input file.
+     * @param statThreads - number of threads reading the sizes of the files.
+     * @return - the manifest.
+     * @throws IOException
+     */
+    static Manifest read(String inputFile, int statThreads) throws IOException {
+        long fragmentLength;
+        List<String> files = new ArrayList<>();
+
+        try (BufferedReader br = new BufferedReader(new FileReader(inputFile))) {
+            fragmentLength = Long.parseLong(br.readLine());
+            int numberOfLines = Integer.parseInt(br.readLine());
+            for (int index = 0; index < numberOfLines; index++) {
+                files.add(br.readLine());
+            }
+        }
+
+        long[] sizes = new long[files.size()];
+        boolean[] splittable = new boolean[files.size()];
+        AtomicIntegerArray retained = new AtomicIntegerArray(files.size());
+        Manifest manifest = new Manifest(fragmentLength, Collections.unmodifiableList(files), sizes, splittable,
+                retained);
+        for (int fileId = 0; fileId < files.size(); fileId++) {
+            FragmentReader.retain(files.get(fileId));
+            retained.set(fileId, 1);
+        }
+        try {
+            stat(files, statThreads, sizes, splittable);
+        } catch (IOException | RuntimeException e) {
+            manifest.releaseAll();
+            throw e;
+        }
+        return manifest;
+    }
+
+    /**
+     * Function that releases the shared reader of a file once the job will read no more fragments of it. A file
+     * listed several times is released once for each time it is listed.
+     * @param fileId - index of the file.
+     */
+    public void release(int fileId) {
+        if (retained.compareAndSet(fileId, 1, 0)) {
+            FragmentReader.release(files.get(fileId));
+        }
+    }
+
+    /**
+     * Function that releases the shared readers of all the files not released yet, at the end of the job.
+     */
+    public void releaseAll() {
+        for (int fileId = 0; fileId < files.size(); fileId++) {
+            release(fileId);
+        }
+    }
+
+    /**
+     * Function that reads the sizes of files, split in one batch per thread.
+     * @param files - names of the files.
+     * @param statThreads - number of threads.
+     * @param sizes - array receiving the sizes, in the order of the files.
+     * @param splittable - array receiving whether each file can be split into fragments.
+     * @throws IOException - if a file is missing or cannot be read.
+     */
+    private static void stat(List<String> files, int statThreads, long[] sizes, boolean[] splittable)
+            throws IOException {
+        int threads = Math.max(1, Math.min(statThreads, files.size() / 64));
+        if (threads == 1) {
+            for (int fileId = 0; fileId < files.size(); fileId++) {
+                stat(files.get(fileId), fileId, sizes, splittable);
+            }
+            return;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "stat");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<?>> batches = new ArrayList<>();
+            for (int thread = 0; thread < threads; thread++) {
+                int first = thread;
+                batches.add(executor.submit(() -> {
+                    for (int fileId = first; fileId < files.size(); fileId += threads) {
+                        stat(files.get(fileId), fileId, sizes, splittable);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> batch : batches) {
+                batch.get();
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Reading the sizes of the files failed", e);
+        } catch (InterruptedException e) {
+            throw new IOException("Reading the sizes of the files failed", e);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Function that reads the size of one file. The blocks of a compressed file are indexed on the way.
+     * @param file - name of the file.
+     * @param fileId - index of the file.
+     * @param sizes - array receiving the size.
+     * @param splittable - array receiving whether the file can be split into fragments.
+     * @throws IOException - if the file is missing or is not a regular file.
+     */
+    private static void stat(String file, int fileId, long[] sizes, boolean[] splittable) throws IOException {
+        if (!new File(file).isFile()) {
+            throw new NoSuchFileException(file, null, "Input file not found");
+        }
+        CompressedInput input = CompressedInput.forFile(file);
+        sizes[fileId] = input != null ? input.getSize() : new File(file).length();
+        splittable[fileId] = input == null || input.isSplittable();
+    }
+
+    public long getFragmentLength() {
+        return fragmentLength;
+    }
+
+    public List<String> getFiles() {
+        return files;
+    }
+
+    public long getFileSize(int fileId) {
+        return sizes[fileId];
+    }
+
+    /**
+     * @param fileId - index of the file.
+     * @return - number of fragments of the file.
+     */
+    public int getFragmentCount(int fileId) {
+        if (!splittable[fileId]) {
+            return sizes[fileId] > 0 ? 1 : 0;
+        }
+        return Math.toIntExact((sizes[fileId] + fragmentLength - 1) / fragmentLength);
+    }
+
+    /**
+     * Function that lists the fragments of all the files in the order in which they should be submitted.
+     * @param largestFirst - true to order the fragments by decreasing length, and by decreasing size of their file for
+     * equal lengths, so the short tail fragments are left to fill the gaps at the end; false to keep the order of the
+     * input file.
+     * @return - the fragments.
+     */
+    public List<Fragment> plan(boolean largestFirst) {
+        List<Fragment> fragments = new ArrayList<>();
+        fragments(largestFirst).forEachRemaining(fragments::add);
+        return fragments;
+    }
+
+    /**
+     * Function that returns the fragments of all the files in the same order as plan, creating each one only when it
+     * is reached. All the fragments of a file have the fragment size, except the last one and the single fragment of
+     * a file which cannot be split, so the order is made of runs of consecutive fragments of one file: first the
+     * single fragments longer than the fragment size, then the full fragments of each file, files by decreasing size,
+     * then the shorter fragments. Only one run per file is kept in memory, whatever the number of fragments.
+     * @param largestFirst - true for the largest-first order of plan, false to keep the order of the input file.
+     * @return - an iterator over the fragments.
+     */
+    public Iterator<Fragment> fragments(boolean largestFirst) {
+        List<Run> runs = new ArrayList<>();
+        if (!largestFirst) {
+            for (int fileId = 0; fileId < files.size(); fileId++) {
+                runs.add(new Run(fileId, 0, getFragmentCount(fileId)));
+            }
+            return new FragmentIterator(runs);
+        }
+
+        List<Fragment> longer = new ArrayList<>();
+        List<Fragment> shorter = new ArrayList<>();
+        for (int fileId = 0; fileId < files.size(); fileId++) {
+            int count = getFragmentCount(fileId);
+            Fragment last = count > 0 ? fragment(fileId, count - 1) : null;
+            if (last != null && last.length > fragmentLength) {
+                longer.add(last);
+            } else if (last != null && last.length < fragmentLength) {
+                shorter.add(last);
+            }
+        }
+        Comparator<Fragment> order = Comparator.comparingLong((Fragment fragment) -> fragment.length).reversed()
+                .thenComparing(Comparator.comparingLong((Fragment fragment) -> sizes[fragment.fileId]).reversed());
+        longer.sort(order);
+        shorter.sort(order);
+
+        for (Fragment fragment : longer) {
+            runs.add(new Run(fragment.fileId, 0, 1));
+        }
+        for (int fileId : fileOrder(true)) {
+            int count = getFragmentCount(fileId);
+            int full = count > 0 && fragment(fileId, count - 1).length != fragmentLength ? count - 1 : count;
+            runs.add(new Run(fileId, 0, full));
+        }
+        for (Fragment fragment : shorter) {
+            int index = getFragmentCount(fragment.fileId) - 1;
+            runs.add(new Run(fragment.fileId, index, 1));
+        }
+        return new FragmentIterator(runs);
+    }
+
+    /**
+     * @param fileId - index of the file.
+     * @param index - index of the fragment in the file.
+     * @return - the fragment.
+     */
+    private Fragment fragment(int fileId, int index) {
+        if (!splittable[fileId]) {
+            return new Fragment(fileId, 0, sizes[fileId]);
+        }
+        long startPos = index * fragmentLength;
+        return new Fragment(fileId, startPos, Math.min(fragmentLength, sizes[fileId] - startPos));
+    }
+
+    /**
+     * Function that lists the files in the order in which they should be submitted.
+     * @param largestFirst - true to order the files by decreasing size, false to keep the order of the input file.
+     * @return - the indexes of the files.
+     */
+    public List<Integer> fileOrder(boolean largestFirst) {
+        List<Integer> order = new ArrayList<>();
+        for (int fileId = 0; fileId < files.size(); fileId++) {
+            order.add(fileId);
+        }
+        if (largestFirst) {
+            order.sort(Comparator.comparingLong((Integer fileId) -> sizes[fileId]).reversed());
+        }
+        return order;
+    }
+
+    /**
+     * Consecutive fragments of one file.
+     */
+    private static class Run {
+        final int fileId;
+        final int first;
+        final int count;
+
+        Run(int fileId, int first, int count) {
+            this.fileId = fileId;
+            this.first = first;
+            this.count = count;
+        }
+    }
+
+    /**
+     * Creates the fragments of a list of runs one at a time.
+     */
+    private class FragmentIterator implements Iterator<Fragment> {
+        private final Iterator<Run> runs;
+        private Run run;
+        private int index;
+
+        FragmentIterator(List<Run> runs) {
+            this.runs = runs.iterator();
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (run == null || index == run.count) {
+                if (!runs.hasNext()) {
+                    return false;
+                }
+                run = runs.next();
+                index = 0;
+            }
+            return true;
+        }
+
+        @Override
+        public Fragment next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return fragment(run.fileId, run.first + index++);
+        }
+    }
+
+    /**
+     * Part of a file processed by one Map task.
+     */
+    static class Fragment {
+        final int fileId;
+        final long startPos;
+        final long length;
+
+        Fragment(int fileId, long startPos, long length) {
+            this.fileId = fileId;
+            this.startPos = startPos;
+            this.length = length;
+        }
+    }
+}
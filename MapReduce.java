@@ -1,9 +1,16 @@
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.List;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 public class MapReduce {
 
@@ -15,166 +22,608 @@ public class MapReduce {
         /**
          * Parse arguments.
          */
+        if (args.length >= 2 && args[0].equals("serve")) {
+            JobServer server = new JobServer(Integer.parseInt(args[1]), JobOptions.parse(args, 2));
+            try {
+                server.run();
+            } catch (IOException | InterruptedException e) {
+                e.printStackTrace();
+            }
+            return;
+        }
+        if (args.length >= 3 && args[0].equals("worker")) {
+            try {
+                new DistributedWorker(Integer.parseInt(args[1]), args[2]).run();
+            } catch (IOException | InterruptedException e) {
+                e.printStackTrace();
+            }
+            return;
+        }
+        if (args.length >= 4 && args[0].equals("index")) {
+            try {
+                RankIndex.query(args, 1);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            return;
+        }
         if (args.length < 3) {
-            System.err.println("Usage: MapReduce <workers> <in_file> <out_file>");
+            System.err.println("Usage: MapReduce <workers> <in_file> <out_file> [options]");
+            System.err.println("       MapReduce serve <workers> --spool-dir=DIR|--port=N [options]");
+            System.err.println("       MapReduce worker <threads> <coordinator host:port>");
+            System.err.println("       MapReduce index <index_file> <out_file> --rank=MIN:MAX|--file=NAME");
+            System.err.println(JobOptions.USAGE);
+            return;
         }
         threadNumber = Integer.parseInt(args[0]);
         inputFile = args[1];
         outputFile = args[2];
+        JobOptions options = JobOptions.parse(args, 3);
+        JobMetrics metrics = new JobMetrics(options.getMetricsFile() != null);
 
-        /**
-         * Map operation.
-         */
-        List<String> fileNames = new ArrayList<>();
-        ExecutorService executorMap = Executors.newFixedThreadPool(threadNumber);
-        List<Future<MapResult>> mapResults = new ArrayList<>();
-        processMap(inputFile, executorMap, mapResults, fileNames);
+        try {
+            runJob(threadNumber, inputFile, options, () -> Executors.newFixedThreadPool(threadNumber), metrics,
+                    output -> writeToFile(outputFile, output));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
 
         /**
-         * Reduce operation.
+         * Write the metrics of the job.
          */
-        ExecutorService executorReduce = Executors.newFixedThreadPool(threadNumber);
+        if (options.getMetricsFile() != null) {
+            try {
+                metrics.writeSummary(options.getMetricsFile());
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Function that runs a whole job: Map and Reduce operations on the files of the input file, then sorting and
+     * writing of the results.
+     * @param threadNumber - number of workers of the job.
+     * @param inputFile - name of the file from where we read fragment size, number of files and name of the files to
+     * be processed.
+     * @param options - optional settings of the job.
+     * @param executors - creates the executors of the executor and pipeline engines.
+     * @param metrics - counters of the job.
+     * @param sink - receives the formatted results, sorted by rang.
+     * @throws IOException
+     */
+    static void runJob(int threadNumber, String inputFile, JobOptions options, Supplier<ExecutorService> executors,
+                       JobMetrics metrics, ResultSink sink) throws IOException {
+        long jobStart = System.nanoTime();
+        Manifest manifest = Manifest.read(inputFile, options.getStatThreads());
+        metrics.recordPhase("plan", jobStart);
+        metrics.start(inputFile, options.isJmx());
+        try {
+            runJob(threadNumber, inputFile, manifest, options, executors, metrics, sink, jobStart);
+        } finally {
+            manifest.releaseAll();
+            metrics.stop();
+        }
+    }
+
+    /**
+     * Function that runs the Map and Reduce operations of a planned job, then sorts and writes the results.
+     * @param threadNumber - number of workers of the job.
+     * @param inputFile - name of the input file of the job.
+     * @param manifest - fragment size, names and sizes of the files to be processed.
+     * @param options - optional settings of the job.
+     * @param executors - creates the executors of the executor and pipeline engines.
+     * @param metrics - counters of the job.
+     * @param sink - receives the formatted results, sorted by rang.
+     * @param jobStart - start time of the job.
+     * @throws IOException
+     */
+    private static void runJob(int threadNumber, String inputFile, Manifest manifest, JobOptions options,
+                               Supplier<ExecutorService> executors, JobMetrics metrics, ResultSink sink,
+                               long jobStart) throws IOException {
+        long phaseStart = System.nanoTime();
+        String phase = "mapReduce";
+
+        if (options.getJobType() != JobOptions.JobType.RANK || options.getEngine() == JobOptions.Engine.GENERIC) {
+            /**
+             * Any job, through its Mapper, Combiner and Reducer.
+             */
+            ExecutorService executor = executors.get();
+            metrics.watch(executor);
+            Job<?, ?> job = Job.create(options.getJobType(), options, metrics);
+            int reducers = options.getReducers() > 0 ? options.getReducers() : threadNumber;
+            List<OutputRecord> records;
+            try {
+                records = new JobRunner<>(job, manifest, options, reducers, metrics).run(executor,
+                        newPendingLimiter(threadNumber, options));
+            } catch (IOException e) {
+                throw new IOException("Job " + inputFile + " failed", e);
+            } finally {
+                manifest.releaseAll();
+            }
+            writeResults(threadNumber, records, ResultWriter.RECORD_KEY,
+                    record -> ResultWriter.format(record.getLine()), options, executors, metrics, sink, jobStart);
+            return;
+        }
+
         List<Future<ReduceResult>> reduceResults = new ArrayList<>();
-        processReduce(fileNames, mapResults, executorReduce, reduceResults);
+        ResultCache cache = null;
+        if (options.getEngine() == JobOptions.Engine.PIPELINE || options.getEngine() == JobOptions.Engine.COMBINER) {
+            /**
+             * Map and Reduce operations, Reduce being done incrementally as Map results arrive.
+             */
+            ExecutorService executor = executors.get();
+            metrics.watch(executor);
+            processPipeline(manifest, options, executor, newPendingLimiter(threadNumber, options), metrics,
+                    reduceResults);
+        } else if (options.getEngine() == JobOptions.Engine.VIRTUAL) {
+            /**
+             * Same as above, each task on its own virtual thread, with bounded I/O.
+             */
+            ExecutorService executor = newVirtualThreadExecutor();
+            metrics.watch(executor);
+            IoLimiter limiter = new IoLimiter(options.getMaxOpenFiles(), options.getMaxInFlightBytes());
+            processPipeline(manifest, options, executor, limiter, metrics, reduceResults);
+        } else if (options.getEngine() == JobOptions.Engine.DISTRIBUTED) {
+            /**
+             * Map operations in worker processes, Reduce operations here as their results arrive.
+             */
+            try {
+                new DistributedCoordinator(manifest, options, threadNumber, metrics).run(reduceResults);
+            } catch (IOException e) {
+                throw new IOException("Job " + inputFile + " failed", e);
+            }
+        } else if (options.getEngine() == JobOptions.Engine.FORKJOIN) {
+            /**
+             * Map and Reduce operations, fused per file on a work-stealing pool.
+             */
+            ForkJoinPool pool = new ForkJoinPool(threadNumber);
+            metrics.watch(pool);
+            processForkJoin(manifest, options, pool, metrics, reduceResults);
+        } else {
+            /**
+             * Map operation.
+             */
+            List<String> fileNames = manifest.getFiles();
+            ExecutorService executorMap = executors.get();
+            metrics.watch(executorMap);
+            List<MapResult[]> mapResults = new ArrayList<>();
+            SpillStore spillStore = null;
+            if (options.getSpillDirectory() != null) {
+                spillStore = new SpillStore(options.getSpillDirectory(), options.getMemoryBudget());
+            }
+            try {
+                if (options.getCacheDirectory() != null) {
+                    cache = new ResultCache(options.getCacheDirectory(), options.getCacheSize());
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            try {
+                processMap(manifest, options, executorMap, newPendingLimiter(threadNumber, options), spillStore,
+                        cache, metrics, mapResults);
+                metrics.recordPhase("map", phaseStart);
+                phaseStart = System.nanoTime();
+                phase = "reduce";
+
+                /**
+                 * Reduce operation.
+                 */
+                ExecutorService executorReduce = executors.get();
+                metrics.watch(executorReduce);
+                if (spillStore != null) {
+                    processSpilledReduce(fileNames, spillStore, cache, options, executorReduce, metrics,
+                            reduceResults);
+                } else {
+                    processReduce(fileNames, mapResults, cache, options, executorReduce, metrics, reduceResults);
+                }
+            } catch (IOException e) {
+                manifest.releaseAll();
+                throw new IOException("Job " + inputFile + " failed", e);
+            }
+        }
         List<ReduceResult> output = new ArrayList<>();
         /**
          * Create a list of ReduceResult from a list of Future<ReduceResult>
          */
+        Exception failure = null;
         for (Future<ReduceResult> reduceResult : reduceResults) {
-            ReduceResult result = null;
             try {
-                result = reduceResult.get();
+                output.add(reduceResult.get());
             } catch (InterruptedException | ExecutionException e) {
+                failure = e;
+            }
+        }
+        metrics.recordPhase(phase, phaseStart);
+        manifest.releaseAll();
+        if (cache != null) {
+            try {
+                cache.evict();
+            } catch (IOException e) {
                 e.printStackTrace();
             }
-            output.add(result);
         }
+        if (failure != null) {
+            throw new IOException("Job " + inputFile + " failed", failure);
+        }
+        writeResults(threadNumber, output, ResultWriter.RESULT_KEY, ResultWriter::format, options, executors,
+                metrics, sink, jobStart);
+    }
+
+    /**
+     * Function that sorts the results of a job, formats them and writes them.
+     * @param threadNumber - number of workers of the job.
+     * @param results - the results, in the order in which results of equal keys are written.
+     * @param key - sort key of a result.
+     * @param format - line of a result, with its line separator.
+     * @param options - optional settings of the job.
+     * @param executors - creates the executor on which the results are sorted and formatted.
+     * @param metrics - counters of the job.
+     * @param sink - receives the formatted results, best rank first.
+     * @param jobStart - start time of the job.
+     * @throws IOException
+     */
+    private static <T> void writeResults(int threadNumber, List<T> results, ResultWriter.SortKey<T> key,
+                                         Function<T, byte[]> format, JobOptions options,
+                                         Supplier<ExecutorService> executors, JobMetrics metrics, ResultSink sink,
+                                         long jobStart) throws IOException {
         /**
-         * Sort the results by rang.
+         * Sort the results by rang, length of the longest words and file name, and format them, in parallel.
          */
-        Collections.sort(output, new Comparator<ReduceResult>() {
-            @Override
-            public int compare(ReduceResult o1, ReduceResult o2) {
-                if (o1.getRang() > o2.getRang()) {
-                    return -1;
-                } else if (o1.getRang() < o2.getRang()) {
-                    return 1;
-                }
-
-                return 0;
-            }
-        });
+        long phaseStart = System.nanoTime();
+        ExecutorService executorOutput = executors.get();
+        List<RankIndex.Entry> index = options.getRankIndex() != null ? new ArrayList<>() : null;
+        List<ByteBuffer> lines;
+        try {
+            lines = new ResultWriter(executorOutput, threadNumber, options.getTopN()).sort(results, key, format,
+                    index);
+        } finally {
+            executorOutput.shutdown();
+        }
+        metrics.recordPhase("sort", phaseStart);
 
         /**
          * Write result to output file.
          */
+        phaseStart = System.nanoTime();
         try {
-            writeToFile(outputFile, output);
-        } catch (IOException e) {
-            e.printStackTrace();
+            sink.write(lines);
+            if (index != null) {
+                RankIndex.write(options.getRankIndex(), index);
+            }
+        } finally {
+            metrics.recordPhase("write", phaseStart);
+            metrics.recordPhase("total", jobStart);
         }
+    }
 
+    /**
+     * Receives the formatted results of a job.
+     */
+    interface ResultSink {
+        void write(List<ByteBuffer> lines) throws IOException;
     }
 
     /**
      * Function that writes the Reduce result to the output file.
      * @param outputFile - name of the output file
-     * @param output - list of results produced after Reduce stage.
+     * @param lines - formatted results produced after Reduce stage, in output order.
      * @throws IOException
      */
-    public static void writeToFile(String outputFile, List<ReduceResult> output) throws IOException {
-        File fout = new File(outputFile);
-        FileOutputStream fos = new FileOutputStream(fout);
-        BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(fos));
-
-        for (ReduceResult value : output) {
-            String stringSplitter[] = value.getFilename().split("/");
-            int wordMaxLength = value.getMaximalWords().get(0).length();
-
-            String toWrite = stringSplitter[stringSplitter.length - 1] + "," + String.format("%.2f", value.getRang()) +
-                    "," + wordMaxLength + "," + value.getAllWords().get(wordMaxLength);
-            bw.write(toWrite);
-            bw.newLine();
+    public static void writeToFile(String outputFile, List<ByteBuffer> lines) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(outputFile), StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ResultWriter.write(channel, lines);
         }
+    }
 
-        bw.close();
+    /**
+     * Function that creates the bounds of the fragments submitted ahead of the workers. A deep enough queue lets the
+     * workers take small fragments without waiting for the submitting thread to be scheduled.
+     * @param threadNumber - number of workers of the job.
+     * @param options - optional settings of the job.
+     * @return - the bounds.
+     */
+    private static IoLimiter newPendingLimiter(int threadNumber, JobOptions options) {
+        int maxPendingFragments = options.getMaxPendingFragments() > 0 ? options.getMaxPendingFragments() :
+                Math.max(1024, 4 * threadNumber);
+        return new IoLimiter(maxPendingFragments, options.getMaxPendingBytes());
     }
 
     /**
-     * Function that reads the input file, starts the tasks and store the Map operation results and names of files
-     * in 2 lists.
-     * @param inputFile - name of the file from where we read fragment size, number of files and name of the files to
-     * be processed.
+     * Function that runs the Map tasks and stores their results, grouped by file. The fragments are submitted as the
+     * workers take them, so only a bounded number of them are queued at any time.
+     * @param manifest - fragment size, names and sizes of the files to be processed.
+     * @param options - optional settings of the job.
      * @param executorMap - a reference to an executor service.
-     * @param mapResults -  list in which results of each Map operation are stored.
-     * @param fileNames - list to add file names to be processed.
+     * @param pending - bounds of the fragments submitted and not yet mapped.
+     * @param spillStore - store to which the results are given as soon as they are computed, or null to keep them in
+     * mapResults.
+     * @param cache - cache of the results of unchanged files, or null. Files found in it are not mapped; each file is
+     * looked up by the first of its fragments to be run.
+     * @param metrics - counters of the job.
+     * @param mapResults -  list in which the results of each file are stored, in the order of its fragments and at the
+     * index of the file in the manifest.
+     * @throws IOException - if a Map operation failed or its result could not be given to the spill store.
      */
-    private static void processMap(String inputFile, ExecutorService executorMap,
-                                   List<Future<MapResult>> mapResults, List<String> fileNames) {
-        try (BufferedReader br = new BufferedReader(new FileReader(inputFile))) {
-
-            int fragmentLength = Integer.parseInt(br.readLine());
-            int numberOfLines = Integer.parseInt(br.readLine());
-            for (int index = 0; index < numberOfLines; index++) {
-                String line = br.readLine();
-
-                fileNames.add(line);
-                int fileSize = (int) new File(line).length();
-                int tasksPerFile = 0;
-                if (fileSize % fragmentLength == 0) {
-                    tasksPerFile = fileSize / fragmentLength;
-                } else {
-                    tasksPerFile = fileSize / fragmentLength + 1;
-                }
-
-                for (int i = 0; i < tasksPerFile; i++) {
-                    int startOffset = i * fragmentLength;
-                    Future<MapResult> future = executorMap.submit(new MapTask(line, startOffset, fragmentLength, fileSize));
-                    mapResults.add(future);
-                }
-            }
-        } catch (IOException e) {
-            e.printStackTrace();
+    private static void processMap(Manifest manifest, JobOptions options, ExecutorService executorMap,
+                                   IoLimiter pending, SpillStore spillStore, ResultCache cache, JobMetrics metrics,
+                                   List<MapResult[]> mapResults) throws IOException {
+        List<String> fileNames = manifest.getFiles();
+        List<FutureTask<Boolean>> lookups = new ArrayList<>();
+        for (int fileId = 0; fileId < fileNames.size(); fileId++) {
+            mapResults.add(new MapResult[spillStore != null ? 0 : manifest.getFragmentCount(fileId)]);
+            int id = fileId;
+            lookups.add(cache == null ? null : new FutureTask<>(() -> useCached(cache, manifest, id,
+                    options.getMaxLongestWords(), spillStore, mapResults)));
         }
 
-        executorMap.shutdown();
+        /**
+         * The first fragment of a file to be mapped looks the file up in the cache, reading it whole for its
+         * checksum; the other fragments of the file wait for the lookup, and none of them is mapped on a hit.
+         */
+        AtomicReference<Exception> failure = new AtomicReference<>();
         try {
+            new FragmentScheduler(pending).run(manifest.fragments(options.isLargestFirst()), executorMap, fragment -> {
+                int fileId = fragment.fileId;
+                if (failure.get() != null) {
+                    return;
+                }
+                try {
+                    FutureTask<Boolean> lookup = lookups.get(fileId);
+                    if (lookup != null) {
+                        lookup.run();
+                        if (lookup.get()) {
+                            return;
+                        }
+                    }
+                    MapResult result = new MapTask(fileNames.get(fileId), fragment.startPos,
+                            manifest.getFragmentLength(), manifest.getFileSize(fileId), options.getMaxLongestWords(),
+                            metrics).call();
+                    if (spillStore != null) {
+                        spillStore.add(fileId, result);
+                    } else {
+                        mapResults.get(fileId)[(int) (fragment.startPos / manifest.getFragmentLength())] = result;
+                    }
+                } catch (Exception e) {
+                    failure.compareAndSet(null, new IOException("Map operation on " + fileNames.get(fileId) +
+                            " failed", e));
+                }
+            });
+            executorMap.shutdown();
             executorMap.awaitTermination(Long.MAX_VALUE, TimeUnit.SECONDS);
         } catch (InterruptedException e) {
-            e.printStackTrace();
+            failure.compareAndSet(null, new IOException("Interrupted while waiting for the Map operations", e));
+        } finally {
+            executorMap.shutdownNow();
+        }
+        if (failure.get() != null) {
+            throw (IOException) failure.get();
+        }
+    }
+
+    /**
+     * Function that looks a file up in the cache and, on a hit, stores its cached result as the result of all its
+     * fragments, then releases the reader of the file, which will not be mapped. A file which cannot be looked up,
+     * for example because it cannot be read, is treated as a miss.
+     * @param cache - cache of the results of unchanged files.
+     * @param manifest - names of the files, whose readers are retained for the job.
+     * @param fileId - index of the file in the manifest.
+     * @param maxLongestWords - bound of the longest words of the job.
+     * @param spillStore - store to which the result is given, or null to keep it in mapResults.
+     * @param mapResults - list in which the results of each file are stored.
+     * @return - true if the file was found in the cache.
+     * @throws IOException - if the result could not be given to the spill store.
+     */
+    private static boolean useCached(ResultCache cache, Manifest manifest, int fileId, int maxLongestWords,
+                                     SpillStore spillStore, List<MapResult[]> mapResults) throws IOException {
+        MapResult result;
+        try {
+            result = cache.lookup(manifest.getFiles().get(fileId), maxLongestWords);
+        } catch (IOException e) {
+            return false;
+        }
+        if (result == null) {
+            return false;
+        }
+
+        manifest.release(fileId);
+        if (spillStore != null) {
+            spillStore.add(fileId, result);
+        } else {
+            mapResults.set(fileId, new MapResult[] {result});
         }
+        return true;
     }
 
     /**
      * Function that computes the Reduce operation and stores the results in a list. Each reduce tasks receives the
-     * file for which we perform Reduce operations and list of MapResults.
+     * file for which we perform Reduce operations and the list of MapResults of that file only.
      * @param fileNames - list of file names.
-     * @param mapResults - list of results of Map operations.
+     * @param mapResults - list of results of Map operations, grouped by the index of their file in fileNames.
+     * @param cache - cache in which the results of the mapped files are stored, or null.
+     * @param options - optional settings of the job.
      * @param executorReduce - reference to executor
+     * @param metrics - counters of the job.
      * @param reduceResults - list in which we store the results of Reduce operations.
+     * @throws IOException - if the wait for the Reduce operations is interrupted.
      */
-    private static void processReduce(List<String> fileNames, List<Future<MapResult>> mapResults,
-                                      ExecutorService executorReduce, List<Future<ReduceResult>> reduceResults) {
-        List<MapResult> mapResultList = new ArrayList<>();
-        for (Future<MapResult> mapResult : mapResults) {
-            MapResult result = null;
-            try {
-                result = mapResult.get();
-            } catch (InterruptedException | ExecutionException e) {
-                e.printStackTrace();
-            }
-            mapResultList.add(result);
-        }
-        for (String file : fileNames) {
-            Future<ReduceResult> future = executorReduce.submit(new ReduceTask(file, mapResultList));
-            reduceResults.add(future);
+    private static void processReduce(List<String> fileNames, List<MapResult[]> mapResults,
+                                      ResultCache cache, JobOptions options, ExecutorService executorReduce,
+                                      JobMetrics metrics, List<Future<ReduceResult>> reduceResults)
+            throws IOException {
+        for (int fileId = 0; fileId < fileNames.size(); fileId++) {
+            List<MapResult> mapResultList = Arrays.asList(mapResults.get(fileId));
+            ReduceTask task = new ReduceTask(fileNames.get(fileId), mapResultList, options.getRankWeights(),
+                    metrics);
+            reduceResults.add(submitReduce(executorReduce, task, cache));
         }
 
         executorReduce.shutdown();
         try {
             executorReduce.awaitTermination(Long.MAX_VALUE, TimeUnit.SECONDS);
         } catch (InterruptedException e) {
-            e.printStackTrace();
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the Reduce operations", e);
+        } finally {
+            executorReduce.shutdownNow();
+        }
+    }
+
+    /**
+     * Function that submits a reduce task. When a cache is given, the histogram and longest words computed for the file
+     * are also stored in it, as the merged Map result of the whole file.
+     * @param executorReduce - reference to executor
+     * @param task - the reduce task.
+     * @param cache - cache of the results of unchanged files, or null.
+     * @return - the future result of the task.
+     */
+    private static Future<ReduceResult> submitReduce(ExecutorService executorReduce, ReduceTask task,
+                                                     ResultCache cache) {
+        if (cache == null) {
+            return executorReduce.submit(task);
+        }
+
+        return executorReduce.submit(() -> {
+            ReduceResult result = task.call();
+            cache.store(result.getFilename(),
+                    new MapResult(result.getFilename(), result.getMaximalWords(), result.getAllWords()));
+            return result;
+        });
+    }
+
+    /**
+     * Function that computes the Reduce operation on results kept by a SpillStore. The results of each file are read
+     * back and merged one file at a time, and each reduce task receives the merged result of its file.
+     * @param fileNames - list of file names.
+     * @param spillStore - store holding the results of the Map operations.
+     * @param cache - cache in which the results of the mapped files are stored, or null.
+     * @param options - optional settings of the job.
+     * @param executorReduce - reference to executor
+     * @param metrics - counters of the job.
+     * @param reduceResults - list in which we store the results of Reduce operations.
+     * @throws IOException - if the results could not be read back.
+     */
+    private static void processSpilledReduce(List<String> fileNames, SpillStore spillStore, ResultCache cache,
+                                             JobOptions options, ExecutorService executorReduce, JobMetrics metrics,
+                                             List<Future<ReduceResult>> reduceResults) throws IOException {
+        try {
+            spillStore.readBack(fileNames, (fileId, result) -> {
+                List<MapResult> mapResultList = result == null ? Collections.emptyList() :
+                        Collections.singletonList(result);
+                ReduceTask task = new ReduceTask(fileNames.get(fileId), mapResultList, options.getRankWeights(),
+                        metrics);
+                reduceResults.add(submitReduce(executorReduce, task, cache));
+            });
+            executorReduce.shutdown();
+            executorReduce.awaitTermination(Long.MAX_VALUE, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            throw new IOException("Interrupted while waiting for the Reduce operations", e);
+        } finally {
+            executorReduce.shutdownNow();
+        }
+    }
+
+    /**
+     * Function that runs the Map tasks. The result of each Map task is merged into the Reduce state of its file by
+     * the worker that computed it, and the ReduceResult of a file becomes available as soon as its last fragment is
+     * merged. The combiner engine uses lock-free states, the other engines states merged under a lock. The fragments
+     * are submitted as the workers take them, within the bounds of the limiter.
+     * @param manifest - fragment size, names and sizes of the files to be processed.
+     * @param options - optional settings of the job.
+     * @param executor - a reference to an executor service.
+     * @param limiter - bounds of the fragments submitted and not yet mapped. On the virtual engine, where every
+     * submitted fragment is read at once by its own thread, they are the bounds of its I/O.
+     * @param metrics - counters of the job.
+     * @param reduceResults - list in which we store the results of Reduce operations.
+     */
+    private static void processPipeline(Manifest manifest, JobOptions options, ExecutorService executor,
+                                        IoLimiter limiter, JobMetrics metrics,
+                                        List<Future<ReduceResult>> reduceResults) {
+        List<String> fileNames = manifest.getFiles();
+        List<FileAggregator> states = new ArrayList<>();
+        for (int fileId = 0; fileId < fileNames.size(); fileId++) {
+            FileAggregator state;
+            if (options.getEngine() == JobOptions.Engine.COMBINER) {
+                state = new FileAccumulator(fileNames.get(fileId), manifest.getFragmentCount(fileId), options, metrics);
+            } else {
+                state = new FileReduceState(fileNames.get(fileId), manifest.getFragmentCount(fileId), options,
+                        metrics);
+            }
+            int id = fileId;
+            state.getResult().whenComplete((result, e) -> manifest.release(id));
+            states.add(state);
+            reduceResults.add(state.getResult());
+        }
+
+        try {
+            new FragmentScheduler(limiter).run(manifest.fragments(options.isLargestFirst()), executor, fragment -> {
+                FileAggregator state = states.get(fragment.fileId);
+                try {
+                    state.accumulate(new MapTask(fileNames.get(fragment.fileId), fragment.startPos,
+                            manifest.getFragmentLength(), manifest.getFileSize(fragment.fileId),
+                            options.getMaxLongestWords(), metrics).call());
+                } catch (Exception e) {
+                    state.fail(e);
+                }
+            });
+        } catch (InterruptedException e) {
+            /**
+             * The fragments not submitted would never complete their files: fail the files which are not complete.
+             */
+            Thread.currentThread().interrupt();
+            IOException failure = new IOException("Interrupted while submitting the Map operations", e);
+            for (FileAggregator state : states) {
+                state.fail(failure);
+            }
+            executor.shutdownNow();
+        }
+
+        executor.shutdown();
+    }
+
+    /**
+     * Function that starts one fork/join task for each file. The fragment size from the input file is used as
+     * splitting threshold: a file is split at word boundaries until its ranges are not larger than it, and the
+     * ReduceResult of the file is computed by the same task once the whole file is mapped.
+     * @param manifest - fragment size, names and sizes of the files to be processed.
+     * @param options - optional settings of the job.
+     * @param pool - a reference to a fork/join pool.
+     * @param metrics - counters of the job.
+     * @param reduceResults - list in which we store the results of Reduce operations.
+     */
+    private static void processForkJoin(Manifest manifest, JobOptions options, ForkJoinPool pool,
+                                        JobMetrics metrics, List<Future<ReduceResult>> reduceResults) {
+        List<String> fileNames = manifest.getFiles();
+        List<Future<ReduceResult>> futures = new ArrayList<>(Collections.nCopies(fileNames.size(), null));
+
+        for (int fileId : manifest.fileOrder(options.isLargestFirst())) {
+            String line = fileNames.get(fileId);
+            long fileSize = manifest.getFileSize(fileId);
+            futures.set(fileId, pool.submit(() -> {
+                MapResult mapResult = new FileRangeTask(line, 0, fileSize, fileSize, manifest.getFragmentLength(),
+                        options.getMaxLongestWords(), metrics).invoke();
+                manifest.release(fileId);
+                return new ReduceTask(line, Collections.singletonList(mapResult), options.getRankWeights(),
+                        metrics).call();
+            }));
+        }
+        reduceResults.addAll(futures);
+
+        pool.shutdown();
+    }
+
+    /**
+     * Function that creates an executor which starts a new virtual thread for each task. Virtual threads need Java 21;
+     * on older runtimes a cached pool of platform threads is used instead, which also does not bound the number of
+     * threads blocked in I/O.
+     * @return - the executor.
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool();
         }
     }
 }
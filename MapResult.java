@@ -1,5 +1,3 @@
-import java.util.List;
-import java.util.Map;
 import java.util.Objects;
 
 /**
@@ -7,15 +5,24 @@ import java.util.Objects;
  */
 public class MapResult {
     private String file;
-    private List<String> maximalWords;
-    private Map<Integer, Integer> words;
+    private LongestWords maximalWords;
+    private WordHistogram words;
 
-    public MapResult(String file, List<String> maximalWords, Map<Integer, Integer> words) {
+    public MapResult(String file, LongestWords maximalWords, WordHistogram words) {
         this.file = file;
         this.maximalWords = maximalWords;
         this.words = words;
     }
 
+    /**
+     * Function that adds the result of another fragment of the same file to this one.
+     * @param other - result of another fragment.
+     */
+    public void merge(MapResult other) {
+        words.merge(other.words);
+        maximalWords.merge(other.maximalWords);
+    }
+
     public String getFile() {
         return file;
     }
@@ -24,19 +31,19 @@ public class MapResult {
         this.file = file;
     }
 
-    public List<String> getMaximalWords() {
+    public LongestWords getMaximalWords() {
         return maximalWords;
     }
 
-    public void setMaximalWords(List<String> maximalWords) {
+    public void setMaximalWords(LongestWords maximalWords) {
         this.maximalWords = maximalWords;
     }
 
-    public Map<Integer, Integer> getWords() {
+    public WordHistogram getWords() {
         return words;
     }
 
-    public void setWords(Map<Integer, Integer> words) {
+    public void setWords(WordHistogram words) {
         this.words = words;
     }
 
@@ -0,0 +1,97 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Compact binary form of a MapResult. Numbers are written as variable-length integers, so a histogram of small counts
+ * takes about one byte per word length. The file name is not written: the caller knows which file a result belongs
+ * to and passes the name back when reading it.
+ */
+class MapResultCodec {
+
+    private MapResultCodec() {
+    }
+
+    /**
+     * Function that writes a MapResult, without its file name.
+     * @param out - destination.
+     * @param result - result to be written.
+     * @throws IOException
+     */
+    static void write(DataOutput out, MapResult result) throws IOException {
+        WordHistogram words = result.getWords();
+        writeVarLong(out, words.getMaxLength());
+        for (int length = 0; length <= words.getMaxLength(); length++) {
+            writeVarLong(out, words.get(length));
+        }
+
+        LongestWords maximalWords = result.getMaximalWords();
+        writeVarLong(out, maximalWords.getCapacity());
+        writeVarLong(out, maximalWords.getLength());
+        writeVarLong(out, maximalWords.getWords().size());
+        for (String word : maximalWords.getWords()) {
+            out.write(word.getBytes(StandardCharsets.ISO_8859_1));
+        }
+    }
+
+    /**
+     * Function that reads a MapResult written by write.
+     * @param in - source.
+     * @param file - name of the file the result belongs to.
+     * @return - the result.
+     * @throws IOException
+     */
+    static MapResult read(DataInput in, String file) throws IOException {
+        WordHistogram words = new WordHistogram();
+        int maxLength = (int) readVarLong(in);
+        for (int length = 0; length <= maxLength; length++) {
+            words.add(length, readVarLong(in));
+        }
+
+        LongestWords maximalWords = new LongestWords((int) readVarLong(in));
+        int wordLength = (int) readVarLong(in);
+        int wordCount = (int) readVarLong(in);
+        byte[] bytes = new byte[wordLength];
+        for (int i = 0; i < wordCount; i++) {
+            in.readFully(bytes);
+            maximalWords.add(new String(bytes, StandardCharsets.ISO_8859_1));
+        }
+
+        return new MapResult(file, maximalWords, words);
+    }
+
+    /**
+     * Function that writes a non-negative number using 7 bits per byte, the high bit marking that more bytes follow.
+     * @param out - destination.
+     * @param value - the number.
+     * @throws IOException
+     */
+    static void writeVarLong(DataOutput out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    /**
+     * Function that reads a number written by writeVarLong.
+     * @param in - source.
+     * @return - the number.
+     * @throws IOException
+     */
+    static long readVarLong(DataInput in) throws IOException {
+        long value = 0;
+        int shift = 0;
+        int b;
+
+        do {
+            b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+
+        return value;
+    }
+}
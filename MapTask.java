@@ -1,152 +1,89 @@
-import java.io.IOException;
-import java.io.RandomAccessFile;
-import java.util.*;
 import java.util.concurrent.Callable;
 
 class MapTask implements Callable<MapResult> {
     private String filename;
-    private int startPos;
-    private int fragmentLength;
-    private int fileSize;
+    private long startPos;
+    private long fragmentLength;
+    private long fileSize;
+    private int maxLongestWords;
+    private JobMetrics metrics;
+    private long bytes;
+    private long boundaryNanos;
+    private long tokenizeNanos;
 
-    public MapTask(String filename, int startPos, int fragmentLength, int fileSize) {
+    /**
+     * @param filename - file of the fragment.
+     * @param startPos - offset of the fragment in the file.
+     * @param fragmentLength - length of the fragment.
+     * @param fileSize - size of the file.
+     * @param maxLongestWords - bound of the longest words kept for the fragment.
+     * @param metrics - counters to which the bytes, words and times of the task are added.
+     */
+    public MapTask(String filename, long startPos, long fragmentLength, long fileSize, int maxLongestWords,
+                   JobMetrics metrics) {
         this.filename = filename;
         this.startPos = startPos;
         this.fragmentLength = fragmentLength;
         this.fileSize = fileSize;
+        this.maxLongestWords = maxLongestWords;
+        this.metrics = metrics;
     }
 
     /**
-     * Function that is being runned by a worker.
+     * Function that is being runned by a worker. A compressed file which cannot be split is mapped whole, whatever
+     * the fragment.
      * @return a MapResult object which contains computed map, file name and a list of maximal words.
      * @throws Exception
      */
     @Override
     public MapResult call() throws Exception {
-        RandomAccessFile file = new RandomAccessFile(filename, "r");
-        String[] wordSplitter;
-        int endPos;
-
-        endPos = Math.min(startPos + fragmentLength, fileSize);
-        updateStartPos(file);
-        endPos = updateEndPos(endPos, file);
-        wordSplitter = getWords(file, endPos);
-
-        file.close();
-        return createMapResult(wordSplitter);
-    }
-
-    /**
-     * Function that creates an object of MapResult
-     * @param wordSplitter - list of words
-     * @return - a MapResult object
-     */
-    private MapResult createMapResult(String[] wordSplitter) {
-        Map<Integer, Integer> words = new HashMap<>();
-        List<String> maximalWords = new ArrayList<>();
-        int maxWordLength;
+        long start = System.nanoTime();
+        RankJob.RankMapper mapper = new RankJob.RankMapper(filename, maxLongestWords);
+        if (!CompressedInput.isSplittable(filename)) {
+            bytes = CompressedInput.forFile(filename).scanStream(mapper);
+            MapResult result = mapper.getResult();
+            tokenizeNanos = System.nanoTime() - start;
+            metrics.recordMapTask(bytes, result.getWords().getTotal(), 0, tokenizeNanos);
+            return result;
+        }
 
-        /**
-         * Create the map and compute the maximum length.
-         */
-        maxWordLength = Integer.MIN_VALUE;
-        for (String s : wordSplitter) {
-            if (!s.equalsIgnoreCase("")) {
-                if (s.length() > maxWordLength) {
-                    maxWordLength = s.length();
-                }
+        long endPos;
+        MapResult result;
 
-                if (!words.containsKey(s.length())) {
-                    words.put(s.length(), 1);
-                } else {
-                    words.put(s.length(), words.get(s.length()) + 1);
-                }
-            }
-        }
+        endPos = Math.min(startPos + fragmentLength, fileSize);
+        try (FragmentReader reader = FragmentReader.forFragment(filename, startPos, endPos)) {
+            startPos = reader.adjustStartPos(startPos);
+            endPos = reader.adjustEndPos(endPos);
+            long adjusted = System.nanoTime();
 
-        /**
-         * Add all words that have length equal to maxWordLength.
-         */
-        for (String value : wordSplitter) {
-            if (value.length() == maxWordLength) {
-                maximalWords.add(value);
-            }
+            WordScanner.scan(reader, startPos, endPos, mapper);
+            result = mapper.getResult();
+            bytes = Math.max(endPos - startPos, 0);
+            boundaryNanos = adjusted - start;
+            tokenizeNanos = System.nanoTime() - adjusted;
+            metrics.recordMapTask(bytes, result.getWords().getTotal(), boundaryNanos, tokenizeNanos);
         }
-
-        return new MapResult(filename, maximalWords, words);
+        return result;
     }
 
     /**
-     * Function that returns a list of words.
-     * @param file - file from which it is read.
-     * @param endPos - upper bound
-     * @return an array of strings which represents the words.
-     * @throws IOException
+     * @return - bytes of the fragment after the boundary adjustment, once the task has run.
      */
-    private String[] getWords(RandomAccessFile file, int endPos) throws IOException {
-        StringBuilder parseText = new StringBuilder();
-
-        file.seek(startPos);
-        for (int i = startPos; i < endPos; i++) {
-            parseText.append((char) file.read());
-        }
-        String result = parseText.toString();
-        String wordSplitter[] = result.split("[^A-Za-z0-9]");
-        return wordSplitter;
+    public long getBytes() {
+        return bytes;
     }
 
     /**
-     * Function that returns the correct end position. Checks if the character on endPos + 1 index is a special character
-     * or not. In case it's a special character or if it's the last character from the file we return the same endPos,
-     * otherwise we loop to the right till we find a special character. On each iteration we update the endPos (it gets
-     * incremented). If endPos is in the middle of a word we will take the whole word.
-     * @param endPos - initial end position
-     * @param file - file from where we read.
-     * @return - correct end position.
-     * @throws IOException
+     * @return - nanoseconds spent adjusting the boundaries, once the task has run.
      */
-    private int updateEndPos(int endPos, RandomAccessFile file) throws IOException {
-        if (endPos != fileSize) {
-            file.seek(endPos - 1);
-            if (!Utils.isSpecialCharacter((char) file.read())) {
-                file.seek(endPos);
-                char c = (char) file.read();
-                if (!Utils.isSpecialCharacter(c)) {
-                    endPos++;
-                    int value = file.read();
-                    while (value != -1 && !Utils.isSpecialCharacter((char) value)) {
-                        endPos++;
-                        value = file.read();
-                    }
-                }
-            }
-        }
-        return endPos;
+    public long getBoundaryNanos() {
+        return boundaryNanos;
     }
 
     /**
-     * Function that updates the startPos with the correct one. We check if the caracter on startPos - 1 index is a
-     * special character or not. In case it's a special character or if it's the first character from the file we return
-     * the same startPos, otherwise we loop to the right till we find a special character. On each iteration we update
-     * the startPos (it gets incremented). If startPos is in the middle of a word we will skip the whole word.
-     * @param file - file from where we read.
-     * @throws IOException
+     * @return - nanoseconds spent tokenizing, once the task has run.
      */
-    private void updateStartPos(RandomAccessFile file) throws IOException {
-        if (startPos != 0) {
-            file.seek(startPos);
-            if (!Utils.isSpecialCharacter((char) file.read())) {
-                int prev = startPos - 1;
-                file.seek(prev);
-                char c = (char) file.read();
-                if (!Utils.isSpecialCharacter(c)) {
-                    int value = file.read();
-                    while (value != -1 && !Utils.isSpecialCharacter((char) value)) {
-                        startPos++;
-                        value = file.read();
-                    }
-                }
-            }
-        }
+    public long getTokenizeNanos() {
+        return tokenizeNanos;
     }
 }
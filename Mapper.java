@@ -0,0 +1,22 @@
+/**
+ * Map side of a job. A Mapper is created for each fragment and receives the words of the fragment one by one from the
+ * WordScanner. It can count them in primitive fields or tables of its own and emits its intermediate records once the
+ * fragment is finished, so no object has to be created for each word.
+ * @param <K> - type of the keys of the intermediate records.
+ * @param <V> - type of their values.
+ */
+interface Mapper<K, V> extends WordScanner.WordConsumer {
+
+    /**
+     * Function that emits the intermediate records of the fragment, after its last word.
+     * @param out - receives the records. Records with equal keys are combined.
+     */
+    void finish(Emitter<K, V> out);
+
+    /**
+     * Receives the intermediate records of a Mapper.
+     */
+    interface Emitter<K, V> {
+        void emit(K key, V value);
+    }
+}
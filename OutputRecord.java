@@ -0,0 +1,39 @@
+/**
+ * Output line of a job run by a JobRunner, with the rank, length and name by which the lines are sorted and the
+ * position of its key in the files, which orders the lines equal on all three.
+ */
+class OutputRecord {
+    private final double rank;
+    private final int length;
+    private final String name;
+    private final String line;
+    private final long order;
+
+    public OutputRecord(double rank, int length, String name, String line, long order) {
+        this.rank = rank;
+        this.length = length;
+        this.name = name;
+        this.line = line;
+        this.order = order;
+    }
+
+    public double getRank() {
+        return rank;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getLine() {
+        return line;
+    }
+
+    public long getOrder() {
+        return order;
+    }
+}
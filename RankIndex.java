@@ -0,0 +1,291 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Binary index of the ranked output of a job, written next to it with --rank-index. It gives for every line its rank,
+ * the length of its longest words, the name of its file and its position in the output file, so lines can be looked
+ * up by rank range or by file name without running the job again or parsing the output.
+ *
+ * Layout, in big-endian order:
+ *   MAGIC count
+ *   count entries, in output order: rank(double) length(int) offset(long) lineLength(int) nameOffset(long)
+ *       nameLength(int)
+ *   count positions of the entries (int), sorted by name then by position
+ *   the names, in UTF-8
+ * The entries and the positions have a fixed size, so both lookups are binary searches on the mapped file.
+ */
+class RankIndex {
+    private static final int MAGIC = 0x4D52_5249;
+    private static final int HEADER_SIZE = 8;
+    private static final int ENTRY_SIZE = 36;
+
+    private final ByteBuffer buffer;
+    private final int count;
+    private final int namesStart;
+    private final int heapStart;
+
+    private RankIndex(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a rank index");
+        }
+        this.count = buffer.getInt(4);
+        if (count < 0 || HEADER_SIZE + (long) count * (ENTRY_SIZE + Integer.BYTES) > buffer.capacity()) {
+            throw new IOException("Truncated rank index");
+        }
+        this.namesStart = HEADER_SIZE + count * ENTRY_SIZE;
+        this.heapStart = namesStart + count * Integer.BYTES;
+    }
+
+    /**
+     * Function that writes the index of a job's output. The file is replaced atomically, so jobs writing the same
+     * index leave the complete index of one of them.
+     * @param path - the index file.
+     * @param entries - the entries, in output order.
+     * @throws IOException
+     */
+    public static void write(Path path, List<Entry> entries) throws IOException {
+        byte[][] names = new byte[entries.size()][];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = entries.get(i).name.getBytes(StandardCharsets.UTF_8);
+        }
+        Integer[] byName = new Integer[entries.size()];
+        Arrays.setAll(byName, i -> i);
+        Arrays.parallelSort(byName, (i, j) -> {
+            int order = entries.get(i).name.compareTo(entries.get(j).name);
+            return order != 0 ? order : Integer.compare(i, j);
+        });
+
+        Path directory = path.toAbsolutePath().getParent();
+        Path temporary = Files.createTempFile(directory, path.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    Files.newOutputStream(temporary), 1 << 16))) {
+                out.writeInt(MAGIC);
+                out.writeInt(entries.size());
+                long nameOffset = 0;
+                for (int i = 0; i < names.length; i++) {
+                    Entry entry = entries.get(i);
+                    out.writeDouble(entry.rank);
+                    out.writeInt(entry.length);
+                    out.writeLong(entry.offset);
+                    out.writeInt(entry.lineLength);
+                    out.writeLong(nameOffset);
+                    out.writeInt(names[i].length);
+                    nameOffset += names[i].length;
+                }
+                for (Integer position : byName) {
+                    out.writeInt(position);
+                }
+                for (byte[] name : names) {
+                    out.write(name);
+                }
+            }
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * Function that maps an index file.
+     * @param path - the index file.
+     * @return - the index.
+     * @throws IOException
+     */
+    public static RankIndex open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Rank index too large: " + path);
+            }
+            return new RankIndex(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * @return - number of lines in the index.
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * @param position - position of a line in the output.
+     * @return - its entry.
+     */
+    public Entry get(int position) {
+        int at = HEADER_SIZE + position * ENTRY_SIZE;
+        long nameOffset = buffer.getLong(at + 24);
+        byte[] name = new byte[buffer.getInt(at + 32)];
+        buffer.slice(Math.toIntExact(heapStart + nameOffset), name.length).get(name);
+        return new Entry(buffer.getDouble(at), buffer.getInt(at + 8), new String(name, StandardCharsets.UTF_8),
+                buffer.getLong(at + 12), buffer.getInt(at + 20));
+    }
+
+    /**
+     * Function that finds the lines whose rank is between two bounds. The lines are sorted by rank, best first, with
+     * the NaN ranks last, so they are found by two binary searches.
+     * @param min - lowest rank (inclusive).
+     * @param max - highest rank (inclusive).
+     * @return - the entries, in output order.
+     */
+    public List<Entry> byRank(double min, double max) {
+        int from = skip(max, false);
+        int to = skip(min, true);
+        List<Entry> entries = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            entries.add(get(i));
+        }
+        return entries;
+    }
+
+    /**
+     * Function that finds the lines of a file.
+     * @param name - name of the file, as written in the input file of the job.
+     * @return - the entries, in output order.
+     */
+    public List<Entry> byName(String name) {
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (get(positionByName(middle)).name.compareTo(name) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        List<Entry> entries = new ArrayList<>();
+        for (int i = low; i < count; i++) {
+            Entry entry = get(positionByName(i));
+            if (!entry.name.equals(name)) {
+                break;
+            }
+            entries.add(entry);
+        }
+        return entries;
+    }
+
+    /**
+     * Function that copies the lines of entries from the output file of the job.
+     * @param output - the output file indexed.
+     * @param entries - entries of the index.
+     * @param out - destination of the lines.
+     * @throws IOException
+     */
+    public static void copyLines(Path output, List<Entry> entries, OutputStream out) throws IOException {
+        try (FileChannel channel = FileChannel.open(output, StandardOpenOption.READ)) {
+            for (Entry entry : entries) {
+                ByteBuffer line = ByteBuffer.allocate(entry.lineLength);
+                while (line.hasRemaining()) {
+                    if (channel.read(line, entry.offset + line.position()) < 0) {
+                        throw new IOException("Output file shorter than its index: " + output);
+                    }
+                }
+                out.write(line.array());
+            }
+        }
+    }
+
+    /**
+     * Function that runs a lookup given on the command line and writes the lines found to the standard output.
+     * @param args - index file, output file and --rank=MIN:MAX or --file=NAME.
+     * @param from - index of the index file in args.
+     * @throws IOException
+     */
+    public static void query(String[] args, int from) throws IOException {
+        RankIndex index = open(Paths.get(args[from]));
+        String query = args[from + 2];
+        List<Entry> entries;
+        if (query.startsWith("--rank=") && query.indexOf(':') > 0) {
+            int separator = query.indexOf(':');
+            entries = index.byRank(Double.parseDouble(query.substring("--rank=".length(), separator)),
+                    Double.parseDouble(query.substring(separator + 1)));
+        } else if (query.startsWith("--file=")) {
+            entries = index.byName(query.substring("--file=".length()));
+        } else {
+            throw new IllegalArgumentException("Unknown query: " + query);
+        }
+        copyLines(Paths.get(args[from + 1]), entries, System.out);
+        System.out.flush();
+    }
+
+    /**
+     * Function that skips the lines whose rank is above a bound.
+     * @param bound - the bound.
+     * @param skipEqual - whether the lines whose rank is equal to the bound are skipped too.
+     * @return - position of the first line not skipped, or the number of lines.
+     */
+    private int skip(double bound, boolean skipEqual) {
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            int order = compareRanks(buffer.getDouble(HEADER_SIZE + middle * ENTRY_SIZE), bound);
+            if (order > 0 || order == 0 && skipEqual) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Function that compares two ranks in the order of the output: as Double.compare does, except that NaN is below
+     * every other rank.
+     * @param rank - a rank.
+     * @param other - another rank.
+     * @return - a negative number, zero or a positive number as the rank is below, equal to or above the other.
+     */
+    private static int compareRanks(double rank, double other) {
+        if (Double.isNaN(rank) || Double.isNaN(other)) {
+            return Boolean.compare(Double.isNaN(other), Double.isNaN(rank));
+        }
+        return Double.compare(rank, other);
+    }
+
+    private int positionByName(int i) {
+        return buffer.getInt(namesStart + i * Integer.BYTES);
+    }
+
+    /**
+     * Indexed line of the output.
+     */
+    static class Entry {
+        final double rank;
+        final int length;
+        final String name;
+        final long offset;
+        final int lineLength;
+
+        /**
+         * @param rank - rank of the line.
+         * @param length - length of the longest words of its file.
+         * @param name - name of its file.
+         * @param offset - position of the line in the output, in bytes.
+         * @param lineLength - length of the line, with its line separator, in bytes.
+         */
+        Entry(double rank, int length, String name, long offset, int lineLength) {
+            this.rank = rank;
+            this.length = length;
+            this.name = name;
+            this.offset = offset;
+            this.lineLength = lineLength;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+import java.util.Collections;
+
+/**
+ * The word length ranking: each file is ranked by the mean weight of the lengths of its words, and its line gives the
+ * length of its longest words and their count. The key of the intermediate records is the name of the file and their
+ * value the histogram and longest words of a fragment, so the records of a file are combined into a MapResult of the
+ * whole file. The executor, pipeline, fork/join, virtual and combiner engines run this job with Map and Reduce tasks
+ * specialized for it; the generic engine runs it as any other job.
+ */
+class RankJob implements Job<String, MapResult> {
+    private final int maxLongestWords;
+    private final RankWeights weights;
+    private final JobMetrics metrics;
+
+    /**
+     * @param maxLongestWords - bound of the longest words kept for a file.
+     * @param weights - weights of the words in the rang.
+     * @param metrics - counters to which the merge times are added.
+     */
+    public RankJob(int maxLongestWords, RankWeights weights, JobMetrics metrics) {
+        this.maxLongestWords = maxLongestWords;
+        this.weights = weights;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public Mapper<String, MapResult> newMapper(String filename) {
+        return new RankMapper(filename, maxLongestWords);
+    }
+
+    @Override
+    public Combiner<MapResult> getCombiner() {
+        return (into, other) -> {
+            into.merge(other);
+            return into;
+        };
+    }
+
+    @Override
+    public Reducer<String, MapResult> getReducer() {
+        return (filename, mapResult, out) -> {
+            ReduceResult result = new ReduceTask(filename, Collections.singletonList(mapResult), weights, metrics)
+                    .call();
+            out.collect(result.getRang(), result.getAllWords().getMaxLength(), filename, ResultWriter.line(result));
+        };
+    }
+
+    /**
+     * Map side of the ranking: the length of each word goes straight into the histogram and only words that can still
+     * be maximal are copied out of the file.
+     */
+    static class RankMapper implements Mapper<String, MapResult> {
+        private final String filename;
+        private final WordHistogram words = new WordHistogram();
+        private final LongestWords maximalWords;
+
+        /**
+         * @param filename - file of the fragment.
+         * @param maxLongestWords - bound of the longest words kept for the fragment.
+         */
+        RankMapper(String filename, int maxLongestWords) {
+            this.filename = filename;
+            this.maximalWords = new LongestWords(maxLongestWords);
+        }
+
+        @Override
+        public void word(FragmentReader reader, long wordStart, long wordEnd) {
+            int length = Math.toIntExact(wordEnd - wordStart);
+            words.add(length);
+
+            if (maximalWords.accepts(length)) {
+                maximalWords.add(reader.getString(wordStart, wordEnd));
+            }
+        }
+
+        @Override
+        public void finish(Emitter<String, MapResult> out) {
+            out.emit(filename, getResult());
+        }
+
+        /**
+         * @return - the histogram and longest words of the words seen so far.
+         */
+        MapResult getResult() {
+            return new MapResult(filename, maximalWords, words);
+        }
+    }
+}
@@ -0,0 +1,23 @@
+/**
+ * Weight of a word in the rang of a file, as a function of its length. The rang of a file is the average weight of
+ * its words.
+ */
+@FunctionalInterface
+public interface RankWeight {
+    /**
+     * The original formula: a word of length n weighs the (n + 1)th Fibonacci number.
+     */
+    RankWeight FIBONACCI = length -> Utils.fibo(length + 1);
+
+    /**
+     * A word weighs its length, so the rang is the average word length.
+     */
+    RankWeight LENGTH = length -> length;
+
+    /**
+     * Function that returns the weight of a word.
+     * @param length - length of the word.
+     * @return - weight of the word.
+     */
+    double weight(int length);
+}
@@ -0,0 +1,91 @@
+import java.util.Arrays;
+
+/**
+ * Table of the weights of a RankWeight function, indexed by word length. The table is filled lazily, grows up to the
+ * longest word seen and can be read by several workers at the same time without locking. Words longer than
+ * MAX_TABLE_LENGTH are weighed on each call instead of growing the table further.
+ *
+ * The FIBONACCI weights are filled by adding the two weights before each one; they grow with the length, so once a
+ * weight is Infinity the table stops growing and the longer words all weigh Infinity. No such assumption is made on
+ * the other weights.
+ */
+public class RankWeights {
+    private static final int MAX_TABLE_LENGTH = 1 << 16;
+
+    /**
+     * Shared table of the FIBONACCI weights, also read by Utils.fibo.
+     */
+    static final RankWeights FIBONACCI = new RankWeights(RankWeight.FIBONACCI);
+
+    private final RankWeight weight;
+    private final boolean fibonacci;
+    private volatile double[] table = new double[0];
+
+    public RankWeights(RankWeight weight) {
+        this.weight = weight;
+        this.fibonacci = weight == RankWeight.FIBONACCI;
+    }
+
+    /**
+     * Function that returns the table of a weight, shared for the FIBONACCI weight.
+     * @param weight - the weight.
+     * @return - the table of the weight.
+     */
+    static RankWeights of(RankWeight weight) {
+        return weight == RankWeight.FIBONACCI ? FIBONACCI : new RankWeights(weight);
+    }
+
+    /**
+     * Function that returns the weight of a word.
+     * @param length - length of the word.
+     * @return - weight of the word.
+     */
+    public double get(int length) {
+        double[] current = table;
+        if (length < current.length) {
+            return current[length];
+        }
+        if (isSaturated(current, current.length)) {
+            return Double.POSITIVE_INFINITY;
+        }
+        if (length >= MAX_TABLE_LENGTH && !fibonacci) {
+            return weight.weight(length);
+        }
+        return grow(length);
+    }
+
+    /**
+     * Function that extends the table so that it contains the given length, within MAX_TABLE_LENGTH and, for the
+     * FIBONACCI weights, up to the first infinite weight.
+     * @param length - length of a word.
+     * @return - weight of the word.
+     */
+    private synchronized double grow(int length) {
+        double[] current = table;
+        if (length >= current.length && current.length < MAX_TABLE_LENGTH && !isSaturated(current, current.length)) {
+            int size = Math.min(Math.max(length + 1, Math.max(64, current.length * 2)), MAX_TABLE_LENGTH);
+            double[] extended = Arrays.copyOf(current, size);
+            int filled = current.length;
+            while (filled < size && !isSaturated(extended, filled)) {
+                extended[filled] = fibonacci ? (filled < 2 ? 1 : extended[filled - 1] + extended[filled - 2]) :
+                        weight.weight(filled);
+                filled++;
+            }
+            current = filled < size ? Arrays.copyOf(extended, filled) : extended;
+            table = current;
+        }
+        if (length < current.length) {
+            return current[length];
+        }
+        return isSaturated(current, current.length) ? Double.POSITIVE_INFINITY : weight.weight(length);
+    }
+
+    /**
+     * @param weights - a table of FIBONACCI weights being filled.
+     * @param filled - number of weights filled.
+     * @return - true if the weights are FIBONACCI weights and the last one filled is Infinity.
+     */
+    private boolean isSaturated(double[] weights, int filled) {
+        return fibonacci && filled > 0 && weights[filled - 1] == Double.POSITIVE_INFINITY;
+    }
+}
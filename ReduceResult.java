@@ -1,5 +1,3 @@
-import java.util.List;
-import java.util.Map;
 import java.util.Objects;
 
 
@@ -8,11 +6,11 @@ import java.util.Objects;
  */
 public class ReduceResult {
     private String filename;
-    private Map<Integer, Integer> allWords;
-    private List<String> maximalWords;
-    private float rang;
+    private WordHistogram allWords;
+    private LongestWords maximalWords;
+    private double rang;
 
-    public ReduceResult(String filename, Map<Integer, Integer> allWords, List<String> maximalWords, float rang) {
+    public ReduceResult(String filename, WordHistogram allWords, LongestWords maximalWords, double rang) {
         this.filename = filename;
         this.allWords = allWords;
         this.maximalWords = maximalWords;
@@ -27,27 +25,27 @@ public class ReduceResult {
         this.filename = filename;
     }
 
-    public Map<Integer, Integer> getAllWords() {
+    public WordHistogram getAllWords() {
         return allWords;
     }
 
-    public void setAllWords(Map<Integer, Integer> allWords) {
+    public void setAllWords(WordHistogram allWords) {
         this.allWords = allWords;
     }
 
-    public List<String> getMaximalWords() {
+    public LongestWords getMaximalWords() {
         return maximalWords;
     }
 
-    public void setMaximalWords(List<String> maximalWords) {
+    public void setMaximalWords(LongestWords maximalWords) {
         this.maximalWords = maximalWords;
     }
 
-    public float getRang() {
+    public double getRang() {
         return rang;
     }
 
-    public void setRang(float rang) {
+    public void setRang(double rang) {
         this.rang = rang;
     }
 
@@ -56,7 +54,7 @@ public class ReduceResult {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         ReduceResult that = (ReduceResult) o;
-        return Float.compare(that.rang, rang) == 0 && Objects.equals(filename, that.filename) &&
+        return Double.compare(that.rang, rang) == 0 && Objects.equals(filename, that.filename) &&
                 Objects.equals(allWords, that.allWords) && Objects.equals(maximalWords, that.maximalWords);
     }
 
@@ -1,14 +1,23 @@
-import java.util.*;
+import java.util.List;
 import java.util.concurrent.Callable;
-import java.util.stream.Collectors;
 
 public class ReduceTask implements Callable<ReduceResult> {
     private String filename;
     private List<MapResult> mapResults;
+    private RankWeights weights;
+    private JobMetrics metrics;
 
-    public ReduceTask(String filename, List<MapResult> mapResults) {
+    /**
+     * @param filename - file for which we perform the Reduce operation.
+     * @param mapResults - results of the Map operations on the fragments of this file.
+     * @param weights - weights of the words in the rang.
+     * @param metrics - counters to which the merge time of the task is added.
+     */
+    public ReduceTask(String filename, List<MapResult> mapResults, RankWeights weights, JobMetrics metrics) {
         this.filename = filename;
         this.mapResults = mapResults;
+        this.weights = weights;
+        this.metrics = metrics;
     }
 
     /**
@@ -19,105 +28,68 @@ public class ReduceTask implements Callable<ReduceResult> {
      */
     @Override
     public ReduceResult call() throws Exception {
-        Map<Integer, Integer> allWords = new HashMap<>();
-        List<String> maximalWords;
-        int numberOfWords;
-        float rang = 0;
+        WordHistogram allWords;
+        LongestWords maximalWords;
+        double rang = 0;
 
-        numberOfWords = createGlobalMap(allWords);
+        long start = System.nanoTime();
+        allWords = createGlobalMap();
         maximalWords = createGLobalMaximalWords();
-        rang = computeRang(allWords, numberOfWords);
+        metrics.recordReduceTask(System.nanoTime() - start);
+        rang = computeRang(allWords);
 
         return new ReduceResult(filename, allWords, maximalWords, rang);
     }
 
     /**
      * Function that computes the rang of a file.
-     * @param allWords - a map of words
-     * @param numberOfWords - number of words.
+     * @param allWords - histogram of word lengths
      * @return
      */
-    private float computeRang(Map<Integer, Integer> allWords, int numberOfWords) {
-        float rang = 0;
+    private double computeRang(WordHistogram allWords) {
+        double rang = 0;
 
-        for (Map.Entry<Integer, Integer> entry : allWords.entrySet()) {
-            rang += Utils.fibo(entry.getKey() + 1) * entry.getValue();
+        for (int length = 1; length <= allWords.getMaxLength(); length++) {
+            long count = allWords.get(length);
+            if (count != 0) {
+                rang += weights.get(length) * count;
+            }
         }
-        rang /= numberOfWords;
+        rang /= allWords.getTotal();
 
         return rang;
     }
 
     /**
-     * Function that creates and returns the list of maximal words for current file.
-     * @return - a list of maximal words
+     * Function that creates and returns the longest words of the current file, by merging the longest words of each
+     * fragment. The accumulator keeps the bound of the fragment results.
+     * @return - the longest words
      */
-    private List<String> createGLobalMaximalWords() {
-
-        /**
-         * Creates a list of maximal words from a list of lists of maximal words. We select the lists of maximal
-         * words only for current file results(filter). We sort the computed list by words length.
-         */
-        List<String> allMaximalWords = mapResults.stream()
-                .filter(value -> value.getFile().equals(filename))
-                .map(MapResult::getMaximalWords)
-                .collect(Collectors.toList()).stream()
-                .flatMap(List::stream)
-                .sorted(new Comparator<String>() {
-                    @Override
-                    public int compare(String o1, String o2) {
-                        if (o1.length() < o2.length()) {
-                            return 1;
-                        } else if (o1.length() > o2.length()) {
-                            return -1;
-                        }
+    private LongestWords createGLobalMaximalWords() {
+        LongestWords maximalWords = null;
 
-                        return 0;
-                    }
-                }).collect(Collectors.toList());
-
-        /**
-         * Create final maximal words list. We only add those words which have maximum length.
-         */
-        List<String> maximalWords = new ArrayList<>();
-        if (allMaximalWords.size() != 0) {
-            int maxLengthWord;
-            int i;
-
-            maxLengthWord  = allMaximalWords.get(0).length();
-            i = 0;
-            while (i < allMaximalWords.size() && allMaximalWords.get(i).length() == maxLengthWord) {
-                maximalWords.add(allMaximalWords.get(i));
-                i++;
+        for (MapResult mapTask : mapResults) {
+            if (maximalWords == null) {
+                maximalWords = new LongestWords(mapTask.getMaximalWords().getCapacity());
             }
+            maximalWords.merge(mapTask.getMaximalWords());
         }
 
-        return maximalWords;
+        return maximalWords != null ? maximalWords : new LongestWords();
     }
 
     /**
-     * Function which computes the final map for current file and the number of words
-     * @param allWords - final created map.
-     * @return - count of all file words.
+     * Function which computes the final histogram for current file.
+     * @return - histogram of all file words.
      */
-    private int createGlobalMap(Map<Integer, Integer> allWords) {
-        int numberOfWords;
+    private WordHistogram createGlobalMap() {
+        WordHistogram allWords = new WordHistogram();
 
-        numberOfWords = 0;
         for (MapResult mapTask : mapResults) {
-            if (mapTask.getFile().equals(filename)) {
-                for (Map.Entry<Integer, Integer> entry : mapTask.getWords().entrySet()) {
-                    numberOfWords += entry.getValue();
-                    if (!allWords.containsKey(entry.getKey())) {
-                        allWords.put(entry.getKey(), entry.getValue());
-                    } else {
-                        allWords.put(entry.getKey(), allWords.get(entry.getKey()) + entry.getValue());
-                    }
-                }
-            }
+            allWords.merge(mapTask.getWords());
         }
 
-        return numberOfWords;
+        return allWords;
     }
 
 }
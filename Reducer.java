@@ -0,0 +1,28 @@
+/**
+ * Reduce side of a job: turns the combined value of each key into output lines.
+ * @param <K> - type of the keys of the intermediate records.
+ * @param <V> - type of their values.
+ */
+interface Reducer<K, V> {
+
+    /**
+     * Function that reduces the records of one key.
+     * @param key - the key.
+     * @param value - combination of all the values emitted for the key.
+     * @param out - receives the output lines.
+     * @throws Exception
+     */
+    void reduce(K key, V value, Output out) throws Exception;
+
+    /**
+     * Receives the output lines of a Reducer. The lines of a job are written best rank first; equal ranks are ordered
+     * by length, the longest first, then by name, then by the position where their keys first appear in the files.
+     */
+    interface Output {
+        void collect(double rank, int length, String name, String line);
+
+        default void collect(double rank, String line) {
+            collect(rank, 0, "", line);
+        }
+    }
+}
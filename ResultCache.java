@@ -0,0 +1,210 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * On-disk cache of the merged Map result of whole input files, so that files which did not change since a previous
+ * run are not mapped again. An entry is keyed by the path, size and modification time of the file and by the bound
+ * of the longest words, and it is only used if the checksum of the content still matches. The modification time of
+ * an entry is its last use: when the cache grows beyond its size the least recently used entries are deleted.
+ */
+class ResultCache {
+    private static final int MAGIC = 0x4D52_4331;
+    private static final long ORPHAN_MILLIS = 60 * 60 * 1000;
+
+    private final Path directory;
+    private final long maxBytes;
+    private final ConcurrentHashMap<String, Key> misses = new ConcurrentHashMap<>();
+
+    /**
+     * @param directory - directory of the cache, created if it does not exist.
+     * @param maxBytes - size the entries may take on disk.
+     * @throws IOException
+     */
+    public ResultCache(Path directory, long maxBytes) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Function that looks up the result of a file. On a miss the key is remembered, so that store does not have to
+     * compute it again.
+     * @param filename - name of the file.
+     * @param maxLongestWords - bound of the longest words of the job.
+     * @return - the cached result, or null if the file is not cached or changed.
+     * @throws IOException
+     */
+    public MapResult lookup(String filename, int maxLongestWords) throws IOException {
+        Path path = Paths.get(filename).toAbsolutePath();
+        Key key = new Key(path.toString(), Files.size(path), Files.getLastModifiedTime(path).toMillis(),
+                maxLongestWords, FragmentReader.forFile(filename).checksum());
+        Path entry = directory.resolve(key.id());
+
+        if (Files.exists(entry)) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(entry)))) {
+                if (in.readInt() == MAGIC && key.equals(Key.read(in))) {
+                    MapResult result = MapResultCodec.read(in, filename);
+                    Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+                    return result;
+                }
+            } catch (IOException e) {
+                Files.deleteIfExists(entry);
+            }
+        }
+
+        misses.put(filename, key);
+        return null;
+    }
+
+    /**
+     * Function that stores the merged result of a file which was looked up and missed. Results of other files are
+     * ignored.
+     * @param filename - name of the file.
+     * @param result - merged result of all the fragments of the file.
+     * @throws IOException
+     */
+    public void store(String filename, MapResult result) throws IOException {
+        Key key = misses.remove(filename);
+        if (key == null) {
+            return;
+        }
+
+        Path temporary = Files.createTempFile(directory, "entry-", ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(temporary)))) {
+            out.writeInt(MAGIC);
+            key.write(out);
+            MapResultCodec.write(out, result);
+        }
+        Files.move(temporary, directory.resolve(key.id()), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Function that deletes the least recently used entries until the cache fits in its size, and the temporary files
+     * left by writes which were interrupted. A temporary file is only deleted once it has not been written for
+     * ORPHAN_MILLIS, so the entries being written by other jobs are kept.
+     * @throws IOException
+     */
+    public void evict() throws IOException {
+        long orphanTime = System.currentTimeMillis() - ORPHAN_MILLIS;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "entry-*.tmp")) {
+            for (Path temporary : stream) {
+                FileTime modified;
+                try {
+                    modified = Files.getLastModifiedTime(temporary);
+                } catch (NoSuchFileException e) {
+                    continue;
+                }
+                if (modified.toMillis() < orphanTime) {
+                    Files.deleteIfExists(temporary);
+                }
+            }
+        }
+
+        List<Path> entries = new ArrayList<>();
+        long totalBytes = 0;
+
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*.entry")) {
+            for (Path entry : stream) {
+                entries.add(entry);
+                totalBytes += Files.size(entry);
+            }
+        }
+        if (totalBytes <= maxBytes) {
+            return;
+        }
+
+        Map<Path, FileTime> lastUse = new HashMap<>();
+        for (Path entry : entries) {
+            lastUse.put(entry, Files.getLastModifiedTime(entry));
+        }
+        entries.sort(Comparator.comparing(lastUse::get));
+
+        for (int i = 0; i < entries.size() && totalBytes > maxBytes; i++) {
+            totalBytes -= Files.size(entries.get(i));
+            Files.deleteIfExists(entries.get(i));
+        }
+    }
+
+    /**
+     * Identity of the content of an input file.
+     */
+    private static class Key {
+        final String path;
+        final long size;
+        final long modified;
+        final int maxLongestWords;
+        final long checksum;
+
+        Key(String path, long size, long modified, int maxLongestWords, long checksum) {
+            this.path = path;
+            this.size = size;
+            this.modified = modified;
+            this.maxLongestWords = maxLongestWords;
+            this.checksum = checksum;
+        }
+
+        /**
+         * @return - name of the entry of this key.
+         */
+        String id() {
+            try {
+                MessageDigest digest = MessageDigest.getInstance("SHA-256");
+                byte[] hash = digest.digest((path + "|" + size + "|" + modified + "|" + maxLongestWords)
+                        .getBytes(StandardCharsets.UTF_8));
+                StringBuilder id = new StringBuilder();
+                for (int i = 0; i < 16; i++) {
+                    id.append(String.format("%02x", hash[i]));
+                }
+                return id.append(".entry").toString();
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            out.writeUTF(path);
+            out.writeLong(size);
+            out.writeLong(modified);
+            out.writeInt(maxLongestWords);
+            out.writeLong(checksum);
+        }
+
+        static Key read(DataInputStream in) throws IOException {
+            return new Key(in.readUTF(), in.readLong(), in.readLong(), in.readInt(), in.readLong());
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return size == key.size && modified == key.modified && maxLongestWords == key.maxLongestWords &&
+                    checksum == key.checksum && path.equals(key.path);
+        }
+
+        @Override
+        public int hashCode() {
+            return path.hashCode();
+        }
+    }
+}
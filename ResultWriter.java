@@ -0,0 +1,385 @@
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+/**
+ * Output stage of a job. The results are ordered by rank, best first, then length of the longest words, longest
+ * first, then name of the file, then position in the input, so the order is the same on every run whatever the number
+ * of workers. A NaN rank comes after every other rank. The order is found by sorting an array of longs holding the
+ * ranks and the indexes of the results with Arrays.parallelSort; it is then cut into one run per worker and each
+ * worker formats its lines into a single buffer. The lines are slices of the run buffers, so they are never copied
+ * again before a gathering write hands them to the channel.
+ *
+ * With a top N, the N best results are first selected with a bounded heap, so only they are sorted and formatted.
+ *
+ * The results are ReduceResults of the ranking, or the OutputRecords of any other job.
+ */
+class ResultWriter {
+    private static final int MAX_GATHER = 1024;
+    private static final byte[] NEWLINE = System.lineSeparator().getBytes(StandardCharsets.US_ASCII);
+    private static final long NAN_BITS = Double.doubleToLongBits(Double.NaN);
+
+    /**
+     * Sort key of the results of the ranking.
+     */
+    static final SortKey<ReduceResult> RESULT_KEY = new SortKey<ReduceResult>() {
+        @Override
+        public double rank(ReduceResult result) {
+            return result.getRang();
+        }
+
+        @Override
+        public int length(ReduceResult result) {
+            return result.getAllWords().getMaxLength();
+        }
+
+        @Override
+        public String name(ReduceResult result) {
+            return result.getFilename();
+        }
+    };
+
+    /**
+     * Sort key of the output lines of the other jobs.
+     */
+    static final SortKey<OutputRecord> RECORD_KEY = new SortKey<OutputRecord>() {
+        @Override
+        public double rank(OutputRecord record) {
+            return record.getRank();
+        }
+
+        @Override
+        public int length(OutputRecord record) {
+            return record.getLength();
+        }
+
+        @Override
+        public String name(OutputRecord record) {
+            return record.getName();
+        }
+    };
+
+    private final ExecutorService executor;
+    private final int runCount;
+    private final int topN;
+
+    /**
+     * @param executor - executor on which the runs are formatted.
+     * @param runCount - number of runs the sorted results are cut into.
+     * @param topN - number of lines to keep, or 0 to keep all of them.
+     */
+    public ResultWriter(ExecutorService executor, int runCount, int topN) {
+        this.executor = executor;
+        this.runCount = Math.max(1, runCount);
+        this.topN = topN;
+    }
+
+    /**
+     * Function that sorts the results by rang, best first, and formats them.
+     * @param results - results of the Reduce tasks, in the order of the input files.
+     * @return - the lines, in output order.
+     * @throws IOException
+     */
+    public List<ByteBuffer> sort(List<ReduceResult> results) throws IOException {
+        return sort(results, RESULT_KEY, ResultWriter::format, null);
+    }
+
+    /**
+     * Function that sorts results by their key, best rank first, and formats them.
+     * @param results - the results, in the order in which results of equal keys are written.
+     * @param key - sort key of a result.
+     * @param format - line of a result, with its line separator.
+     * @param index - list to which the index entry of each line is added, in output order, or null.
+     * @return - the lines, in output order.
+     * @throws IOException
+     */
+    public <T> List<ByteBuffer> sort(List<T> results, SortKey<T> key, Function<T, byte[]> format,
+                                     List<RankIndex.Entry> index) throws IOException {
+        int[] order = order(results, key, topN);
+
+        int count = order.length;
+        int runSize = (count + runCount - 1) / runCount;
+        List<Future<Run>> futures = new ArrayList<>();
+        for (int start = 0; start < count; start += runSize) {
+            int from = start;
+            int to = Math.min(start + runSize, count);
+            futures.add(executor.submit(() -> new Run(results, order, from, to, format)));
+        }
+
+        List<ByteBuffer> lines = new ArrayList<>(count);
+        try {
+            for (Future<Run> future : futures) {
+                future.get().addTo(lines);
+            }
+        } catch (InterruptedException | ExecutionException e) {
+            throw new IOException("Formatting of the results failed", e);
+        }
+
+        if (index != null) {
+            long offset = 0;
+            for (int i = 0; i < count; i++) {
+                T result = results.get(order[i]);
+                int lineLength = lines.get(i).remaining();
+                index.add(new RankIndex.Entry(key.rank(result), key.length(result), key.name(result), offset,
+                        lineLength));
+                offset += lineLength;
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * Function that writes lines to a channel, gathering up to MAX_GATHER of them in each write when the channel
+     * supports it.
+     * @param channel - destination.
+     * @param lines - the lines.
+     * @throws IOException
+     */
+    public static void write(WritableByteChannel channel, List<ByteBuffer> lines) throws IOException {
+        if (!(channel instanceof GatheringByteChannel)) {
+            for (ByteBuffer line : lines) {
+                while (line.hasRemaining()) {
+                    channel.write(line);
+                }
+            }
+            return;
+        }
+
+        GatheringByteChannel gathering = (GatheringByteChannel) channel;
+        for (int from = 0; from < lines.size(); from += MAX_GATHER) {
+            ByteBuffer[] batch = lines.subList(from, Math.min(from + MAX_GATHER, lines.size()))
+                    .toArray(new ByteBuffer[0]);
+            long remaining = 0;
+            for (ByteBuffer line : batch) {
+                remaining += line.remaining();
+            }
+            while (remaining > 0) {
+                remaining -= gathering.write(batch);
+            }
+        }
+    }
+
+    /**
+     * Function that formats the line of a result: name of the file, rang with two decimals, length of the longest
+     * words and their count.
+     * @param result - the result.
+     * @return - the line, with its line separator.
+     */
+    static byte[] format(ReduceResult result) {
+        return format(line(result));
+    }
+
+    /**
+     * @param result - a result.
+     * @return - the line of the result, without line separator.
+     */
+    static String line(ReduceResult result) {
+        String filename = result.getFilename();
+        int wordMaxLength = result.getAllWords().getMaxLength();
+        return filename.substring(filename.lastIndexOf('/') + 1) + "," + formatRang(result.getRang()) + "," +
+                wordMaxLength + "," + result.getAllWords().get(wordMaxLength);
+    }
+
+    /**
+     * @param line - a line, without line separator.
+     * @return - the line, with its line separator.
+     */
+    static byte[] format(String line) {
+        byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+        byte[] withNewline = Arrays.copyOf(bytes, bytes.length + NEWLINE.length);
+        System.arraycopy(NEWLINE, 0, withNewline, bytes.length, NEWLINE.length);
+        return withNewline;
+    }
+
+    /**
+     * Function that formats a rang with two decimals. Rounding the shortest decimal form of the double half up gives
+     * the same digits as String.format("%.2f"); for the usual plain forms this is done on the digits directly, without
+     * parsing a format string or creating a BigDecimal for every line.
+     * @param rang - the rang.
+     * @return - the formatted rang.
+     */
+    static String formatRang(double rang) {
+        if (Double.isNaN(rang) || Double.isInfinite(rang)) {
+            return String.format("%.2f", rang);
+        }
+
+        String sign = Double.doubleToRawLongBits(rang) < 0 ? "-" : "";
+        String digits = Double.toString(Math.abs(rang));
+        int dot = digits.indexOf('.');
+        if (digits.indexOf('E') >= 0 || dot > 15) {
+            return sign + BigDecimal.valueOf(Math.abs(rang)).setScale(2, RoundingMode.HALF_UP).toPlainString();
+        }
+
+        long hundredths = Long.parseLong(digits.substring(0, dot)) * 100;
+        for (int i = 1; i <= 2; i++) {
+            hundredths += (dot + i < digits.length() ? digits.charAt(dot + i) - '0' : 0) * (i == 1 ? 10 : 1);
+        }
+        if (dot + 3 < digits.length() && digits.charAt(dot + 3) >= '5') {
+            hundredths++;
+        }
+
+        long fraction = hundredths % 100;
+        return sign + hundredths / 100 + (fraction < 10 ? ".0" : ".") + fraction;
+    }
+
+    /**
+     * Keys by which the results are ordered.
+     * @param <T> - type of the results.
+     */
+    interface SortKey<T> {
+        /**
+         * @param result - a result.
+         * @return - its rank, the greatest first.
+         */
+        double rank(T result);
+
+        /**
+         * @param result - a result.
+         * @return - length of its longest words, which orders equal ranks, the longest first.
+         */
+        int length(T result);
+
+        /**
+         * @param result - a result.
+         * @return - name of its file, which orders equal ranks and lengths.
+         */
+        String name(T result);
+    }
+
+    /**
+     * Function that sorts results by their key. With a limit, the best results are first selected with a heap
+     * bounded to the limit, whose head is the worst result kept. Each result kept is given a long made of the high
+     * bits of its rank, best first, above its position, and the longs are sorted with Arrays.parallelSort. Results
+     * whose high bits are equal are then in the order of the input; the rare runs of them which differ in the low bits
+     * of their rank, in their length or in their name are sorted again on the whole key.
+     * @param results - the results.
+     * @param key - sort key of a result.
+     * @param limit - number of results to keep, or 0 to keep all of them.
+     * @return - the indexes of the results kept, in output order.
+     */
+    private static <T> int[] order(List<T> results, SortKey<T> key, int limit) {
+        /**
+         * Bits of the ranks which, compared as unsigned longs, order the ranks as Double.compare does, reversed. NaN
+         * is given the greatest bits, so it comes last.
+         */
+        long[] ranks = new long[results.size()];
+        Arrays.parallelSetAll(ranks, i -> {
+            long bits = Double.doubleToLongBits(key.rank(results.get(i)));
+            return bits == NAN_BITS ? -1L : ~(bits ^ (bits >> 63) & Long.MAX_VALUE ^ Long.MIN_VALUE);
+        });
+
+        Comparator<Integer> byKey = (i, j) -> {
+            int comparison = Long.compareUnsigned(ranks[i], ranks[j]);
+            if (comparison == 0) {
+                comparison = Integer.compare(key.length(results.get(j)), key.length(results.get(i)));
+            }
+            if (comparison == 0) {
+                comparison = key.name(results.get(i)).compareTo(key.name(results.get(j)));
+            }
+            return comparison != 0 ? comparison : Integer.compare(i, j);
+        };
+
+        int[] kept;
+        if (limit > 0 && limit < results.size()) {
+            PriorityQueue<Integer> best = new PriorityQueue<>(limit + 1, byKey.reversed());
+            for (int i = 0; i < results.size(); i++) {
+                if (best.size() < limit) {
+                    best.add(i);
+                } else if (byKey.compare(i, best.peek()) < 0) {
+                    best.poll();
+                    best.add(i);
+                }
+            }
+            kept = best.stream().mapToInt(Integer::intValue).sorted().toArray();
+        } else {
+            kept = new int[results.size()];
+            Arrays.setAll(kept, i -> i);
+        }
+
+        int count = kept.length;
+        int indexBits = Integer.SIZE - Integer.numberOfLeadingZeros(Math.max(count - 1, 0));
+        long indexMask = (1L << indexBits) - 1;
+        long[] keys = new long[count];
+        Arrays.parallelSetAll(keys, i -> ranks[kept[i]] >>> indexBits + 1 << indexBits | i);
+        Arrays.parallelSort(keys);
+        int[] order = new int[count];
+        Arrays.parallelSetAll(order, i -> kept[(int) (keys[i] & indexMask)]);
+
+        int end;
+        for (int start = 0; start < count; start = end) {
+            end = start + 1;
+            boolean sorted = true;
+            while (end < count && keys[end] >>> indexBits == keys[start] >>> indexBits) {
+                sorted &= byKey.compare(order[end - 1], order[end]) < 0;
+                end++;
+            }
+            if (!sorted) {
+                Integer[] run = new Integer[end - start];
+                for (int i = 0; i < run.length; i++) {
+                    run[i] = order[start + i];
+                }
+                Arrays.parallelSort(run, byKey);
+                for (int i = 0; i < run.length; i++) {
+                    order[start + i] = run[i];
+                }
+            }
+        }
+        return order;
+    }
+
+    /**
+     * Formatted part of the sorted results. The lines are stored one after the other in a single buffer.
+     */
+    private static class Run {
+        private final int[] ends;
+        private final ByteBuffer buffer;
+
+        /**
+         * @param results - all the results.
+         * @param order - the indexes of the results, in output order.
+         * @param from - first position of the run in the order (inclusive).
+         * @param to - last position of the run in the order (exclusive).
+         * @param format - line of a result.
+         */
+        <T> Run(List<T> results, int[] order, int from, int to, Function<T, byte[]> format) {
+            byte[][] lines = new byte[to - from][];
+            int size = 0;
+            for (int i = 0; i < lines.length; i++) {
+                lines[i] = format.apply(results.get(order[from + i]));
+                size += lines[i].length;
+            }
+
+            ends = new int[lines.length];
+            buffer = ByteBuffer.allocateDirect(Math.max(size, 1));
+            for (int i = 0; i < lines.length; i++) {
+                buffer.put(lines[i]);
+                ends[i] = buffer.position();
+            }
+        }
+
+        /**
+         * Function that adds the lines of the run, as slices of its buffer.
+         * @param lines - list to which the lines are added.
+         */
+        void addTo(List<ByteBuffer> lines) {
+            for (int i = 0; i < ends.length; i++) {
+                ByteBuffer line = buffer.duplicate();
+                line.limit(ends[i]).position(i == 0 ? 0 : ends[i - 1]);
+                lines.add(line);
+            }
+        }
+    }
+}
@@ -0,0 +1,231 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Keeps the results of the Map tasks under a memory budget. Results are merged per file as they arrive; when the
+ * merged results take more than the budget they are written to a new segment file, in file order, and dropped from
+ * memory. At the end the segments are read back together with what is still in memory, one file at a time, so the
+ * memory used does not depend on the size of the input.
+ */
+class SpillStore {
+    private static final int MAX_SEGMENTS = 32;
+
+    private final Path directory;
+    private final long memoryBudget;
+    private final List<Path> segments = new ArrayList<>();
+    private TreeMap<Integer, MapResult> buffer = new TreeMap<>();
+    private long bufferedBytes;
+
+    /**
+     * @param directory - directory in which the segment files are created.
+     * @param memoryBudget - approximate number of bytes the results may take in memory.
+     */
+    public SpillStore(Path directory, long memoryBudget) {
+        this.directory = directory;
+        this.memoryBudget = memoryBudget;
+    }
+
+    /**
+     * Function that adds the result of a Map task.
+     * @param fileId - index of the file of the result.
+     * @param result - result of the Map task.
+     * @throws IOException
+     */
+    public synchronized void add(int fileId, MapResult result) throws IOException {
+        MapResult merged = buffer.get(fileId);
+        if (merged == null) {
+            buffer.put(fileId, result);
+            bufferedBytes += estimateSize(result);
+        } else {
+            bufferedBytes -= estimateSize(merged);
+            merged.merge(result);
+            bufferedBytes += estimateSize(merged);
+        }
+
+        if (bufferedBytes > memoryBudget) {
+            spill();
+        }
+    }
+
+    /**
+     * Function that reads back the results of all the files, in file order, merging for each file the results kept in
+     * memory with those from every segment. The segment files are deleted afterwards.
+     * @param fileNames - names of the files, indexed by file id.
+     * @param consumer - receives the id and the merged result of each file, or null if the file had no result.
+     * @throws IOException
+     */
+    public synchronized void readBack(List<String> fileNames, ResultConsumer consumer) throws IOException {
+        int[] nextFileId = {0};
+        merge(segments, fileNames, (fileId, result) -> {
+            while (nextFileId[0] < fileId) {
+                consumer.accept(nextFileId[0]++, null);
+            }
+            consumer.accept(nextFileId[0]++, result);
+        });
+        while (nextFileId[0] < fileNames.size()) {
+            consumer.accept(nextFileId[0]++, null);
+        }
+        segments.clear();
+        bufferedBytes = 0;
+    }
+
+    /**
+     * Function that writes the buffered results to a new segment file, in file order, and drops them from memory.
+     * When there are too many segments they are first merged into one, so that reading them back never needs more
+     * than MAX_SEGMENTS open files.
+     * @throws IOException
+     */
+    private void spill() throws IOException {
+        if (segments.size() >= MAX_SEGMENTS) {
+            List<Path> merged = new ArrayList<>(segments);
+            segments.clear();
+            segments.add(writeSegment(consumer -> merge(merged, null, consumer)));
+        }
+        segments.add(writeSegment(consumer -> {
+            for (Map.Entry<Integer, MapResult> entry : buffer.entrySet()) {
+                consumer.accept(entry.getKey(), entry.getValue());
+            }
+        }));
+        buffer = new TreeMap<>();
+        bufferedBytes = 0;
+    }
+
+    /**
+     * Function that writes a new segment file. Each record is the file id plus one, followed by the encoded result;
+     * a 0 ends the segment.
+     * @param source - gives the records, in file order.
+     * @return - path of the segment.
+     * @throws IOException
+     */
+    private Path writeSegment(RecordSource source) throws IOException {
+        Path segment = Files.createTempFile(directory, "mapreduce-", ".spill");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(segment), 1 << 16))) {
+            source.forEach((fileId, result) -> {
+                MapResultCodec.writeVarLong(out, fileId + 1);
+                MapResultCodec.write(out, result);
+            });
+            MapResultCodec.writeVarLong(out, 0);
+        }
+        return segment;
+    }
+
+    /**
+     * Function that merges segment files, file by file, and deletes them. Every segment is sorted by file id, so only
+     * its next record has to be looked at.
+     * @param paths - segments to be merged.
+     * @param fileNames - names of the files, indexed by file id, to merge the buffered results as well; or null to
+     * merge only the segments.
+     * @param consumer - receives, in file order, the id and the merged result of each file having a result.
+     * @throws IOException
+     */
+    private void merge(List<Path> paths, List<String> fileNames, ResultConsumer consumer) throws IOException {
+        List<SegmentReader> readers = new ArrayList<>();
+        try {
+            for (Path segment : paths) {
+                readers.add(new SegmentReader(segment));
+            }
+
+            while (true) {
+                int fileId = buffer.isEmpty() || fileNames == null ? Integer.MAX_VALUE : buffer.firstKey();
+                for (SegmentReader reader : readers) {
+                    if (reader.nextFileId >= 0) {
+                        fileId = Math.min(fileId, reader.nextFileId);
+                    }
+                }
+                if (fileId == Integer.MAX_VALUE) {
+                    break;
+                }
+
+                MapResult merged = fileNames == null ? null : buffer.remove(fileId);
+                for (SegmentReader reader : readers) {
+                    MapResult result = reader.next(fileId, fileNames == null ? null : fileNames.get(fileId));
+                    if (result == null) {
+                        continue;
+                    }
+                    if (merged == null) {
+                        merged = result;
+                    } else {
+                        merged.merge(result);
+                    }
+                }
+                consumer.accept(fileId, merged);
+            }
+        } finally {
+            for (SegmentReader reader : readers) {
+                reader.close();
+            }
+            for (Path segment : paths) {
+                Files.deleteIfExists(segment);
+            }
+        }
+    }
+
+    /**
+     * Function that approximates the heap taken by a MapResult.
+     * @param result - the result.
+     * @return - approximate size in bytes.
+     */
+    private static long estimateSize(MapResult result) {
+        long size = 128 + 8L * (result.getWords().getMaxLength() + 1);
+        size += (long) result.getMaximalWords().getWords().size() * (64 + result.getMaximalWords().getLength());
+        return size;
+    }
+
+    /**
+     * Receives the merged result of a file.
+     */
+    interface ResultConsumer {
+        void accept(int fileId, MapResult result) throws IOException;
+    }
+
+    /**
+     * Gives records, in file order, to a consumer.
+     */
+    private interface RecordSource {
+        void forEach(ResultConsumer consumer) throws IOException;
+    }
+
+    /**
+     * Sequential reader of a segment file. Records are in file order, so a reader only has to look at its next
+     * record to know whether it holds a result for the current file.
+     */
+    private static class SegmentReader {
+        private final DataInputStream in;
+        private int nextFileId;
+
+        SegmentReader(Path segment) throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(segment), 1 << 16));
+            this.nextFileId = (int) MapResultCodec.readVarLong(in) - 1;
+        }
+
+        /**
+         * Function that returns the record of a file if it is the next one of the segment.
+         * @param fileId - id of the file.
+         * @param file - name of the file.
+         * @return - the result, or null if the segment has no result for this file.
+         * @throws IOException
+         */
+        MapResult next(int fileId, String file) throws IOException {
+            if (nextFileId != fileId) {
+                return null;
+            }
+            MapResult result = MapResultCodec.read(in, file);
+            nextFileId = (int) MapResultCodec.readVarLong(in) - 1;
+            return result;
+        }
+
+        void close() throws IOException {
+            in.close();
+        }
+    }
+}
@@ -1,22 +1,25 @@
-
 public class Utils {
+    private static final boolean[] wordCharacters = new boolean[256];
+
+    static {
+        for (char c = 'a'; c <= 'z'; c++) {
+            wordCharacters[c] = true;
+            wordCharacters[Character.toUpperCase(c)] = true;
+        }
+        for (char c = '0'; c <= '9'; c++) {
+            wordCharacters[c] = true;
+        }
+    }
 
     /**
-     * Function that returns the nth number of Fibonacci series.
+     * Function that returns the nth number of Fibonacci series, read from the shared table of the FIBONACCI weights,
+     * in which a word of length n weighs the (n + 1)th number. The numbers are exact up to the 78th and approximated
+     * beyond it, but they never overflow: from the 1477th on they are all Infinity.
      * @param n - number of element to compute
      * @return - nth element of Fibonacci series
      */
-    static int fibo(int n) {
-        int aux[] = new int[n + 2];
-
-        aux[0] = 0;
-        aux[1] = 1;
-        for (int i = 2; i <= n; i++) {
-            int newValue = aux[i - 2] + aux[i - 1];
-            aux[i] = newValue;
-        }
-
-        return aux[n];
+    static double fibo(int n) {
+        return n == 0 ? 0 : RankWeights.FIBONACCI.get(n - 1);
     }
 
     /**
@@ -27,4 +30,13 @@ public class Utils {
     static boolean isSpecialCharacter(char ch) {
         return !(Character.isDigit(ch) || Character.isLetter(ch));
     }
+
+    /**
+     * Function that checks if a byte can be part of a word. Words are made only of ASCII letters and digits.
+     * @param b - unsigned byte value on which we perform the check
+     * @return - true or false whether the byte belongs to a word or not.
+     */
+    static boolean isWordCharacter(int b) {
+        return wordCharacters[b];
+    }
 }
@@ -0,0 +1,108 @@
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Number of occurrences of each word of all the input files, most frequent first. Each fragment counts its words in a
+ * table of its own, so a word is copied out of the file only the first time the fragment sees it.
+ */
+class WordFrequencyJob implements Job<String, LongCount> {
+
+    @Override
+    public Mapper<String, LongCount> newMapper(String filename) {
+        return new Mapper<String, LongCount>() {
+            private final Map<WordKey, LongCount> counts = new HashMap<>();
+            private final WordKey probe = new WordKey();
+
+            @Override
+            public void word(FragmentReader reader, long wordStart, long wordEnd) {
+                probe.set(reader, wordStart, wordEnd);
+                LongCount count = counts.get(probe);
+                if (count == null) {
+                    count = new LongCount();
+                    counts.put(new WordKey(reader.getString(wordStart, wordEnd)), count);
+                }
+                count.value++;
+            }
+
+            @Override
+            public void finish(Emitter<String, LongCount> out) {
+                for (Map.Entry<WordKey, LongCount> entry : counts.entrySet()) {
+                    out.emit(entry.getKey().word, entry.getValue());
+                }
+            }
+        };
+    }
+
+    @Override
+    public Combiner<LongCount> getCombiner() {
+        return LongCount.SUM;
+    }
+
+    @Override
+    public Reducer<String, LongCount> getReducer() {
+        return (word, count, out) -> out.collect(count.get(), word + "," + count.get());
+    }
+
+    /**
+     * Key of the table of a fragment. The probe refers to a word in the file, so looking up a word already counted
+     * does not copy it; the keys stored in the table hold a copy of their word.
+     */
+    private static class WordKey {
+        private FragmentReader reader;
+        private long start;
+        private long end;
+        private String word;
+        private int hash;
+
+        WordKey() {
+        }
+
+        WordKey(String word) {
+            this.word = word;
+            this.end = word.length();
+            for (int i = 0; i < word.length(); i++) {
+                hash = 31 * hash + word.charAt(i);
+            }
+        }
+
+        /**
+         * Function that makes the probe refer to a word of a file.
+         * @param reader - reader of the file.
+         * @param start - first position of the word (inclusive).
+         * @param end - last position of the word (exclusive).
+         */
+        void set(FragmentReader reader, long start, long end) {
+            this.reader = reader;
+            this.start = start;
+            this.end = end;
+            hash = 0;
+            for (long pos = start; pos < end; pos++) {
+                hash = 31 * hash + reader.get(pos);
+            }
+        }
+
+        private int length() {
+            return (int) (end - start);
+        }
+
+        private int charAt(int i) {
+            return word != null ? word.charAt(i) : reader.get(start + i);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof WordKey)) return false;
+            WordKey other = (WordKey) o;
+            if (hash != other.hash || length() != other.length()) return false;
+            for (int i = 0; i < length(); i++) {
+                if (charAt(i) != other.charAt(i)) return false;
+            }
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+import java.util.Arrays;
+
+/**
+ * Number of words for each word length. Word lengths are small and dense, so the counts are kept in an array indexed
+ * by length which grows on demand.
+ */
+public class WordHistogram {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private long[] counts;
+    private long total;
+    private int maxLength;
+
+    public WordHistogram() {
+        this.counts = new long[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Function that counts one more word of the given length.
+     * @param length - length of the word.
+     */
+    public void add(int length) {
+        add(length, 1);
+    }
+
+    /**
+     * Function that counts more words of the given length.
+     * @param length - length of the words.
+     * @param count - number of words.
+     */
+    public void add(int length, long count) {
+        if (count == 0) {
+            return;
+        }
+        if (length >= counts.length) {
+            counts = Arrays.copyOf(counts, Math.max(length + 1, counts.length * 2));
+        }
+        counts[length] += count;
+        total += count;
+        if (length > maxLength) {
+            maxLength = length;
+        }
+    }
+
+    /**
+     * Function that adds all the counts of another histogram to this one.
+     * @param other - histogram to be merged.
+     */
+    public void merge(WordHistogram other) {
+        for (int length = 0; length <= other.maxLength; length++) {
+            add(length, other.counts[length]);
+        }
+    }
+
+    /**
+     * Function that returns the number of words of the given length.
+     * @param length - length of the words.
+     * @return - number of words.
+     */
+    public long get(int length) {
+        return length < counts.length ? counts[length] : 0;
+    }
+
+    /**
+     * @return - number of words of all lengths.
+     */
+    public long getTotal() {
+        return total;
+    }
+
+    /**
+     * @return - the largest length which has at least one word, or 0 if the histogram is empty.
+     */
+    public int getMaxLength() {
+        return maxLength;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        WordHistogram that = (WordHistogram) o;
+        return total == that.total && maxLength == that.maxLength &&
+                Arrays.equals(counts, 0, maxLength + 1, that.counts, 0, maxLength + 1);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = 1;
+        for (int length = 0; length <= maxLength; length++) {
+            result = 31 * result + Long.hashCode(counts[length]);
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("{");
+        for (int length = 0; length <= maxLength; length++) {
+            if (counts[length] != 0) {
+                if (builder.length() > 1) {
+                    builder.append(", ");
+                }
+                builder.append(length).append('=').append(counts[length]);
+            }
+        }
+        return builder.append('}').toString();
+    }
+}
@@ -0,0 +1,166 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Tokenizer shared by all jobs: finds the words of a part of a file and hands their positions to a consumer. The part
+ * is scanned once and walks the mapping windows of the file one at a time, so it may be larger than a window and a
+ * word may continue from one window into the next.
+ *
+ * By default the bytes are classified eight at a time in a long (SWAR), 64 bytes giving a bitmask of word characters
+ * from which the starts and ends of the words are read with bit operations; the remaining bytes of a window are
+ * classified one by one. -Dmapreduce.tokenizer=scalar classifies every byte on its own instead.
+ */
+class WordScanner {
+    private static final boolean SWAR = !"scalar".equals(System.getProperty("mapreduce.tokenizer"));
+    private static final long HIGH_BITS = 0x8080808080808080L;
+    private static final long CASE_BITS = 0x2020202020202020L;
+    private static final long MOVE_MASK = 0x0102040810204080L;
+
+    private WordScanner() {
+    }
+
+    /**
+     * Receives the words found by the scan.
+     */
+    interface WordConsumer {
+        /**
+         * @param reader - reader of the file.
+         * @param wordStart - first position of the word (inclusive).
+         * @param wordEnd - last position of the word (exclusive).
+         */
+        void word(FragmentReader reader, long wordStart, long wordEnd);
+    }
+
+    /**
+     * Function that scans the words between two positions of a file.
+     * @param reader - reader of the file.
+     * @param startPos - first position (inclusive), at the start of a word or between words.
+     * @param endPos - last position (exclusive), at the end of a word or between words.
+     * @param consumer - receives the words, in the order of the file.
+     */
+    static void scan(FragmentReader reader, long startPos, long endPos, WordConsumer consumer) {
+        if (SWAR) {
+            scanBlocks(reader, startPos, endPos, consumer);
+        } else {
+            scanBytes(reader, startPos, endPos, consumer);
+        }
+    }
+
+    /**
+     * Function that scans the words between two positions of a file one byte at a time.
+     * @param reader - reader of the file.
+     * @param startPos - first position (inclusive), at the start of a word or between words.
+     * @param endPos - last position (exclusive), at the end of a word or between words.
+     * @param consumer - receives the words, in the order of the file.
+     */
+    static void scanBytes(FragmentReader reader, long startPos, long endPos, WordConsumer consumer) {
+        long wordStart;
+
+        wordStart = -1;
+        for (long windowPos = startPos; windowPos < endPos; ) {
+            ByteBuffer window = reader.getWindow(windowPos);
+            long windowStart = reader.getWindowStart(windowPos);
+            int from = (int) (windowPos - windowStart);
+            int to = (int) Math.min(endPos - windowStart, window.limit());
+
+            for (int i = from; i < to; i++) {
+                if (Utils.isWordCharacter(window.get(i) & 0xFF)) {
+                    if (wordStart < 0) {
+                        wordStart = windowStart + i;
+                    }
+                    continue;
+                }
+                if (wordStart >= 0) {
+                    consumer.word(reader, wordStart, windowStart + i);
+                    wordStart = -1;
+                }
+            }
+            windowPos = windowStart + to;
+        }
+        if (wordStart >= 0) {
+            consumer.word(reader, wordStart, endPos);
+        }
+    }
+
+    /**
+     * Function that scans the words between two positions of a file 64 bytes at a time. In the bitmask of a block, a
+     * word starts on each word character whose previous byte is not one, and ends on each other byte whose previous
+     * byte is one; the previous byte of the first one is the last byte of the block before. Starts and ends alternate,
+     * so whether a bit is one or the other follows from whether a word is open.
+     * @param reader - reader of the file.
+     * @param startPos - first position (inclusive), at the start of a word or between words.
+     * @param endPos - last position (exclusive), at the end of a word or between words.
+     * @param consumer - receives the words, in the order of the file.
+     */
+    static void scanBlocks(FragmentReader reader, long startPos, long endPos, WordConsumer consumer) {
+        long wordStart;
+
+        wordStart = -1;
+        for (long windowPos = startPos; windowPos < endPos; ) {
+            ByteBuffer window = reader.getWindow(windowPos);
+            ByteBuffer longs = window.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+            long windowStart = reader.getWindowStart(windowPos);
+            int from = (int) (windowPos - windowStart);
+            int to = (int) Math.min(endPos - windowStart, window.limit());
+
+            int i = from;
+            for (; i <= to - 64; i += 64) {
+                long mask = 0;
+                for (int k = 0; k < 8; k++) {
+                    mask |= wordBytes(longs.getLong(i + 8 * k)) << (8 * k);
+                }
+                long previous = mask << 1 | (wordStart >= 0 ? 1 : 0);
+                for (long bounds = mask ^ previous; bounds != 0; bounds &= bounds - 1) {
+                    long pos = windowStart + i + Long.numberOfTrailingZeros(bounds);
+                    if (wordStart < 0) {
+                        wordStart = pos;
+                    } else {
+                        consumer.word(reader, wordStart, pos);
+                        wordStart = -1;
+                    }
+                }
+            }
+            for (; i < to; i++) {
+                if (Utils.isWordCharacter(window.get(i) & 0xFF)) {
+                    if (wordStart < 0) {
+                        wordStart = windowStart + i;
+                    }
+                    continue;
+                }
+                if (wordStart >= 0) {
+                    consumer.word(reader, wordStart, windowStart + i);
+                    wordStart = -1;
+                }
+            }
+            windowPos = windowStart + to;
+        }
+        if (wordStart >= 0) {
+            consumer.word(reader, wordStart, endPos);
+        }
+    }
+
+    /**
+     * Function that classifies eight bytes at once. Clearing the high bit of every byte keeps the additions below from
+     * carrying into the next byte: adding 0x80 - c sets the high bit of the bytes not lower than c. Setting the case
+     * bit maps the uppercase letters onto the lowercase ones and no other byte onto them.
+     * @param bytes - eight bytes, the first one in the low bits.
+     * @return - a mask of eight bits, bit k being set if byte k is an ASCII letter or digit.
+     */
+    static long wordBytes(long bytes) {
+        long low = bytes & ~HIGH_BITS;
+        long folded = low | CASE_BITS;
+        long letters = atLeast(folded, 'a') & ~atLeast(folded, 'z' + 1);
+        long digits = atLeast(low, '0') & ~atLeast(low, '9' + 1);
+        long words = (letters | digits) & ~bytes & HIGH_BITS;
+        return (words >>> 7) * MOVE_MASK >>> 56;
+    }
+
+    /**
+     * @param low - eight bytes whose high bit is clear.
+     * @param c - a byte value, from 1 to 128.
+     * @return - the high bit of each byte set if the byte is not lower than c.
+     */
+    private static long atLeast(long low, int c) {
+        return (low + (0x80 - c) * 0x0101010101010101L) & HIGH_BITS;
+    }
+}
@@ -0,0 +1,115 @@
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ * Generates synthetic inputs for the benchmarks: a number of text files of a given size, with word lengths drawn
+ * from a configurable distribution, and the input file of the job listing them.
+ */
+class CorpusGenerator {
+    private static final byte[] SEPARATORS = {' ', ' ', ' ', ' ', ' ', ' ', '\n', ',', '.', '-'};
+
+    private final int fileCount;
+    private final int fileSize;
+    private final String wordLength;
+    private final String distribution;
+    private final double[] parameters;
+    private final long seed;
+
+    /**
+     * @param fileCount - number of files.
+     * @param fileSize - size of each file in bytes.
+     * @param wordLength - distribution of word lengths: "fixed:N", "uniform:MIN-MAX" or "geometric:MEAN".
+     * @param seed - seed of the random generator, so that the same corpus can be generated again.
+     */
+    public CorpusGenerator(int fileCount, int fileSize, String wordLength, long seed) {
+        this.fileCount = fileCount;
+        this.fileSize = fileSize;
+        this.wordLength = wordLength;
+        this.seed = seed;
+
+        String[] spec = wordLength.split("[:-]");
+        this.distribution = spec[0];
+        this.parameters = new double[spec.length - 1];
+        for (int i = 1; i < spec.length; i++) {
+            parameters[i - 1] = Double.parseDouble(spec[i]);
+        }
+    }
+
+    /**
+     * Function that writes the files and the input file of the job in a directory.
+     * @param directory - directory in which the corpus is written.
+     * @param fragmentLength - fragment size written in the input file.
+     * @return - path of the input file.
+     * @throws IOException
+     */
+    public Path generate(Path directory, int fragmentLength) throws IOException {
+        Files.createDirectories(directory);
+
+        Path inputFile = directory.resolve("input_" + fragmentLength + ".txt");
+        try (BufferedWriter manifest = new BufferedWriter(new FileWriter(inputFile.toFile()))) {
+            manifest.write(fragmentLength + "\n" + fileCount + "\n");
+            for (int i = 0; i < fileCount; i++) {
+                Path file = directory.resolve("file" + i + ".txt");
+                if (!Files.exists(file) || Files.size(file) != fileSize) {
+                    writeFile(file, new Random(seed + i));
+                }
+                manifest.write(file.toAbsolutePath() + "\n");
+            }
+        }
+
+        return inputFile;
+    }
+
+    /**
+     * Function that writes one file of random words.
+     * @param file - path of the file.
+     * @param random - random generator.
+     * @throws IOException
+     */
+    private void writeFile(Path file, Random random) throws IOException {
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file.toFile()), 1 << 16)) {
+            int written = 0;
+            while (written < fileSize) {
+                int length = Math.min(nextWordLength(random), fileSize - written);
+                for (int i = 0; i < length; i++) {
+                    out.write('a' + random.nextInt(26));
+                }
+                written += length;
+                if (written < fileSize) {
+                    out.write(SEPARATORS[random.nextInt(SEPARATORS.length)]);
+                    written++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Function that draws the length of the next word.
+     * @param random - random generator.
+     * @return - a length, at least 1.
+     */
+    private int nextWordLength(Random random) {
+        switch (distribution) {
+            case "fixed":
+                return (int) parameters[0];
+            case "uniform":
+                return (int) parameters[0] + random.nextInt((int) (parameters[1] - parameters[0]) + 1);
+            case "geometric":
+                return 1 + (int) (Math.log(1 - random.nextDouble()) / Math.log(1 - 1 / parameters[0]));
+            default:
+                throw new IllegalArgumentException("Unknown word length distribution: " + wordLength);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return fileCount + " files x " + fileSize + " bytes, words " + wordLength;
+    }
+}
@@ -0,0 +1,480 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Workloads of the benchmarks over synthetic corpora: the Map, Reduce and whole job stages and their parts. They are
+ * measured by the JMH benchmarks of jmh.MapReduceBenchmark. JMH needs its benchmarks in a named package, from which the
+ * classes of the default package cannot be named, so the benchmarks get their workloads from prepare, by reflection,
+ * and only see them as a Callable and an AutoCloseable.
+ *
+ * Each workload returns a value depending on its work, which JMH consumes, so the JIT cannot drop it.
+ */
+public class Workloads {
+    /**
+     * Function that generates the corpus of a workload, unless it is already on disk, and prepares the workload.
+     * @param name - name of the workload, which is the name of its JMH benchmark method.
+     * @param parameters - parameters of the corpus: files, fileSize, wordLength (fixed:N, uniform:MIN-MAX or
+     * geometric:MEAN), fragmentSize, the number of workers, the options of the job workload (jobOptions, separated by
+     * spaces) and the directory of the corpora (dir, or empty for a directory in java.io.tmpdir).
+     * @return - the workload, a Callable running one iteration which is also AutoCloseable.
+     * @throws Exception
+     */
+    public static Callable<Long> prepare(String name, Map<String, String> parameters) throws Exception {
+        if (name.equals("fibo")) {
+            return new Workload(Workloads::fibo, null);
+        }
+
+        String wordLength = parameters.get("wordLength");
+        int fragmentSize = Integer.parseInt(parameters.get("fragmentSize"));
+        Path directory = parameters.get("dir").isEmpty() ?
+                Paths.get(System.getProperty("java.io.tmpdir"), "mapreduce-bench") : Paths.get(parameters.get("dir"));
+        directory = directory.resolve(parameters.get("files") + "_" + parameters.get("fileSize") + "_" +
+                wordLength.replace(':', '_'));
+        CorpusGenerator generator = new CorpusGenerator(Integer.parseInt(parameters.get("files")),
+                Integer.parseInt(parameters.get("fileSize")), wordLength, 42);
+        Corpus corpus = new Corpus(generator.generate(directory, fragmentSize), directory);
+        int workers = Integer.parseInt(parameters.get("workers"));
+
+        switch (name) {
+            case "boundary":
+                return new Workload(() -> boundary(corpus), null);
+            case "tokenizeBytes":
+                return new Workload(() -> tokenize(corpus, WordScanner::scanBytes), null);
+            case "tokenizeSwar":
+                return new Workload(() -> tokenize(corpus, WordScanner::scanBlocks), null);
+            case "tokenizeSplit":
+                return new Workload(() -> tokenizeSplit(corpus), null);
+            case "map":
+                return new Workload(() -> map(corpus), null);
+            case "reduce":
+                return reduce(corpus);
+            case "combineLocked":
+            case "combineAtomic":
+                return combine(corpus, workers, name.equals("combineAtomic"));
+            case "gunzipFirst":
+            case "bgzf":
+            case "gzipStream":
+                return compressed(corpus, workers, name);
+            case "job":
+                return job(corpus, workers, parameters.get("jobOptions"));
+            default:
+                throw new IllegalArgumentException("Unknown workload: " + name);
+        }
+    }
+
+    /**
+     * Boundary adjustment of every fragment, without tokenization.
+     */
+    private static long boundary(Corpus corpus) throws Exception {
+        long sum = 0;
+        for (int i = 0; i < corpus.files.size(); i++) {
+            FragmentReader reader = FragmentReader.forFile(corpus.files.get(i));
+            long fileSize = corpus.sizes.get(i);
+            for (long start = 0; start < fileSize; start += corpus.fragmentLength) {
+                sum += reader.adjustStartPos(start);
+                sum += reader.adjustEndPos(Math.min(start + corpus.fragmentLength, fileSize));
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Function that tokenizes every file of a corpus on one thread, the word lengths going into a histogram: one byte
+     * at a time (tokenizeBytes) or 64 bytes at a time with SWAR bitmasks (tokenizeSwar).
+     * @param corpus - the corpus.
+     * @param scanner - the tokenizer.
+     * @return - the number of words.
+     * @throws Exception
+     */
+    private static long tokenize(Corpus corpus, Scanner scanner) throws Exception {
+        WordHistogram words = new WordHistogram();
+        for (int i = 0; i < corpus.files.size(); i++) {
+            scanner.scan(FragmentReader.forFile(corpus.files.get(i)), 0, corpus.sizes.get(i),
+                    (reader, wordStart, wordEnd) -> words.add((int) (wordEnd - wordStart)));
+        }
+        return words.getTotal();
+    }
+
+    /**
+     * Tokenization of every file by decoding it into a string split by a regular expression.
+     */
+    private static long tokenizeSplit(Corpus corpus) throws Exception {
+        WordHistogram words = new WordHistogram();
+        for (int i = 0; i < corpus.files.size(); i++) {
+            FragmentReader reader = FragmentReader.forFile(corpus.files.get(i));
+            for (String word : reader.getString(0, corpus.sizes.get(i)).split("[^a-zA-Z0-9]+")) {
+                if (!word.isEmpty()) {
+                    words.add(word.length());
+                }
+            }
+        }
+        return words.getTotal();
+    }
+
+    /**
+     * Map tasks over every fragment: boundary adjustment, tokenization and creation of the MapResult.
+     */
+    private static long map(Corpus corpus) throws Exception {
+        long sum = 0;
+        for (List<MapResult> fileResults : corpus.map()) {
+            sum += fileResults.size();
+        }
+        return sum;
+    }
+
+    /**
+     * Reduce tasks of every file, on the results of the Map tasks computed beforehand.
+     */
+    private static Workload reduce(Corpus corpus) throws Exception {
+        List<List<MapResult>> mapResults = corpus.map();
+        RankWeights weights = RankWeights.of(RankWeight.FIBONACCI);
+        JobMetrics metrics = new JobMetrics();
+        return new Workload(() -> {
+            long sum = 0;
+            for (int i = 0; i < corpus.files.size(); i++) {
+                ReduceTask task = new ReduceTask(corpus.files.get(i), mapResults.get(i), weights, metrics);
+                sum += task.call().getAllWords().getTotal();
+            }
+            return sum;
+        }, null);
+    }
+
+    /**
+     * Merging of the Map results into the per-file states of the pipelined engines by concurrent workers, under a lock
+     * (pipeline engine) or with atomic counters (combiner engine), on Map results computed beforehand.
+     */
+    private static Workload combine(Corpus corpus, int threads, boolean atomic) throws Exception {
+        List<List<MapResult>> mapResults = corpus.map();
+        JobOptions jobOptions = new JobOptions();
+        JobMetrics metrics = new JobMetrics();
+        AggregatorFactory factory = atomic ?
+                (file, fragments) -> new FileAccumulator(file, fragments, jobOptions, metrics) :
+                (file, fragments) -> new FileReduceState(file, fragments, jobOptions, metrics);
+        return new Workload(() -> combine(corpus, mapResults, threads, factory), null);
+    }
+
+    /**
+     * Function that merges Map results into new per-file states, the fragments being shared out between threads.
+     * @param corpus - the corpus.
+     * @param mapResults - the results, grouped by file.
+     * @param threads - number of threads.
+     * @param factory - creates the state of a file from its name and number of fragments.
+     * @return - the sum of the word counts of the files.
+     * @throws Exception
+     */
+    private static long combine(Corpus corpus, List<List<MapResult>> mapResults, int threads,
+                                AggregatorFactory factory) throws Exception {
+        List<FileAggregator> states = new ArrayList<>();
+        List<MapResult> fragments = new ArrayList<>();
+        List<FileAggregator> fragmentStates = new ArrayList<>();
+        for (int i = 0; i < corpus.files.size(); i++) {
+            FileAggregator state = factory.create(corpus.files.get(i), mapResults.get(i).size());
+            states.add(state);
+            for (MapResult result : mapResults.get(i)) {
+                fragments.add(result);
+                fragmentStates.add(state);
+            }
+        }
+
+        AtomicInteger next = new AtomicInteger();
+        Thread[] workers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Thread(() -> {
+                for (int fragment = next.getAndIncrement(); fragment < fragments.size();
+                     fragment = next.getAndIncrement()) {
+                    fragmentStates.get(fragment).accumulate(fragments.get(fragment));
+                }
+            });
+            workers[i].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        long sum = 0;
+        for (FileAggregator state : states) {
+            sum += state.getResult().get().getAllWords().getTotal();
+        }
+        return sum;
+    }
+
+    /**
+     * Map tasks over the corpus compressed with gzip, on a pool of workers: decompressing every file to scratch disk
+     * before mapping its fragments (gunzipFirst), mapping the fragments of BGZF files, each one decompressing its own
+     * blocks (bgzf), and tokenizing single-stream gzip files while they are decompressed, one task per file
+     * (gzipStream). The compressed copies are written next to the files of the corpus on first use.
+     */
+    private static Workload compressed(Corpus corpus, int threads, String name) throws Exception {
+        List<String> gzipFiles = new ArrayList<>();
+        List<String> bgzfFiles = new ArrayList<>();
+        for (String file : corpus.files) {
+            gzipFiles.add(compress(file, ".gz", (in, out) -> {
+                try (GZIPOutputStream gzip = new GZIPOutputStream(out, CompressedInput.BLOCK_SIZE)) {
+                    in.transferTo(gzip);
+                }
+            }));
+            bgzfFiles.add(compress(file, ".bgz", CompressedInput::writeBgzf));
+        }
+
+        switch (name) {
+            case "gunzipFirst":
+                return new Workload(() -> mapCompressed(threads, executor -> {
+                    List<Future<Path>> scratchFiles = new ArrayList<>();
+                    for (String file : gzipFiles) {
+                        scratchFiles.add(executor.submit(() -> {
+                            Path scratch = Files.createTempFile(corpus.directory, "scratch", ".txt");
+                            try (InputStream in = new GZIPInputStream(Files.newInputStream(Paths.get(file)),
+                                    CompressedInput.BLOCK_SIZE)) {
+                                Files.copy(in, scratch, StandardCopyOption.REPLACE_EXISTING);
+                            }
+                            return scratch;
+                        }));
+                    }
+                    List<String> files = new ArrayList<>();
+                    for (Future<Path> scratch : scratchFiles) {
+                        files.add(scratch.get().toString());
+                    }
+                    try {
+                        return mapFiles(executor, files, corpus.fragmentLength);
+                    } finally {
+                        for (String file : files) {
+                            Files.delete(Paths.get(file));
+                        }
+                    }
+                }), null);
+            case "bgzf":
+                return new Workload(() -> mapCompressed(threads,
+                        executor -> mapFiles(executor, bgzfFiles, corpus.fragmentLength)), null);
+            default:
+                return new Workload(() -> mapCompressed(threads,
+                        executor -> mapFiles(executor, gzipFiles, corpus.fragmentLength)), null);
+        }
+    }
+
+    /**
+     * Function that writes the compressed copy of a file, unless it already exists.
+     * @param file - the file.
+     * @param suffix - suffix added to the name of the file.
+     * @param compressor - the compression.
+     * @return - name of the compressed copy.
+     * @throws IOException
+     */
+    private static String compress(String file, String suffix, Compressor compressor) throws IOException {
+        Path compressed = Paths.get(file + suffix);
+        if (!Files.exists(compressed)) {
+            Path partial = Paths.get(file + suffix + ".partial");
+            try (InputStream in = Files.newInputStream(Paths.get(file));
+                 OutputStream out = Files.newOutputStream(partial)) {
+                compressor.compress(in, out);
+            }
+            Files.move(partial, compressed, StandardCopyOption.REPLACE_EXISTING);
+        }
+        return compressed.toString();
+    }
+
+    /**
+     * Function that runs code on a new pool of workers, then drops the readers and indexes of the files it read, so
+     * every iteration starts from the compressed files.
+     * @param threads - number of workers.
+     * @param body - code to be run.
+     * @return - the value returned by the code.
+     * @throws Exception
+     */
+    private static long mapCompressed(int threads, PoolBody body) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            return body.run(executor);
+        } finally {
+            executor.shutdown();
+            FragmentReader.releaseAll();
+        }
+    }
+
+    /**
+     * Function that runs the Map tasks of every fragment of files, plain or compressed, a compressed file which cannot
+     * be split giving a single task.
+     * @param executor - executor on which the tasks run.
+     * @param files - names of the files.
+     * @param fragmentLength - fragment size.
+     * @return - the number of words.
+     * @throws Exception
+     */
+    private static long mapFiles(ExecutorService executor, List<String> files, int fragmentLength)
+            throws Exception {
+        JobMetrics metrics = new JobMetrics();
+        List<Future<MapResult>> results = new ArrayList<>();
+        for (String file : files) {
+            CompressedInput input = CompressedInput.forFile(file);
+            long size = input != null ? input.getSize() : Files.size(Paths.get(file));
+            long step = CompressedInput.isSplittable(file) ? fragmentLength : Math.max(size, 1);
+            for (long start = 0; start < size; start += step) {
+                results.add(executor.submit(new MapTask(file, start, fragmentLength, size,
+                        LongestWords.DEFAULT_CAPACITY, metrics)));
+            }
+        }
+        long words = 0;
+        for (Future<MapResult> result : results) {
+            words += result.get().getWords().getTotal();
+        }
+        return words;
+    }
+
+    /**
+     * Whole job, from the input file to the output file, with the options of the job workload.
+     */
+    private static Workload job(Corpus corpus, int workers, String jobOptions) throws Exception {
+        Path output = Files.createTempFile("mapreduce-bench", ".out");
+        List<String> args = new ArrayList<>(Arrays.asList(String.valueOf(workers), corpus.inputFile.toString(),
+                output.toString()));
+        if (!jobOptions.isEmpty()) {
+            args.addAll(Arrays.asList(jobOptions.split(" ")));
+        }
+        return new Workload(() -> {
+            MapReduce.main(args.toArray(new String[0]));
+            return Files.size(output);
+        }, () -> Files.deleteIfExists(output));
+    }
+
+    /**
+     * Fibonacci numbers for all the word lengths which fit in an int.
+     */
+    private static long fibo() {
+        long sum = 0;
+        for (int repeat = 0; repeat < 1000; repeat++) {
+            for (int n = 1; n <= 46; n++) {
+                sum += Utils.fibo(n);
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * A prepared workload. Closing it deletes its temporary files and drops the shared readers of the corpus.
+     */
+    private static class Workload implements Callable<Long>, AutoCloseable {
+        private final Body body;
+        private final Cleanup cleanup;
+
+        /**
+         * @param body - one iteration of the workload.
+         * @param cleanup - deletes the temporary files of the workload, or null.
+         */
+        Workload(Body body, Cleanup cleanup) {
+            this.body = body;
+            this.cleanup = cleanup;
+        }
+
+        @Override
+        public Long call() throws Exception {
+            return body.run();
+        }
+
+        @Override
+        public void close() throws IOException {
+            FragmentReader.releaseAll();
+            if (cleanup != null) {
+                cleanup.run();
+            }
+        }
+    }
+
+    /**
+     * Code measured by a benchmark. It returns a value depending on its work.
+     */
+    private interface Body {
+        long run() throws Exception;
+    }
+
+    /**
+     * Deletes the temporary files of a workload.
+     */
+    private interface Cleanup {
+        void run() throws IOException;
+    }
+
+    /**
+     * Code measured by a benchmark on a pool of workers.
+     */
+    private interface PoolBody {
+        long run(ExecutorService executor) throws Exception;
+    }
+
+    /**
+     * Compresses a file.
+     */
+    private interface Compressor {
+        void compress(InputStream in, OutputStream out) throws IOException;
+    }
+
+    /**
+     * A tokenizer of WordScanner.
+     */
+    private interface Scanner {
+        void scan(FragmentReader reader, long startPos, long endPos, WordScanner.WordConsumer consumer);
+    }
+
+    /**
+     * Creates the per-file state of a pipelined engine.
+     */
+    private interface AggregatorFactory {
+        FileAggregator create(String file, int fragmentCount);
+    }
+
+    /**
+     * Files and fragment size of a generated input file.
+     */
+    private static class Corpus {
+        final Path inputFile;
+        final Path directory;
+        final int fragmentLength;
+        final List<String> files = new ArrayList<>();
+        final List<Long> sizes = new ArrayList<>();
+
+        Corpus(Path inputFile, Path directory) throws IOException {
+            List<String> lines = Files.readAllLines(inputFile);
+            this.inputFile = inputFile;
+            this.directory = directory;
+            this.fragmentLength = Integer.parseInt(lines.get(0));
+            for (int i = 0; i < Integer.parseInt(lines.get(1)); i++) {
+                String file = lines.get(i + 2);
+                files.add(file);
+                sizes.add(Files.size(Paths.get(file)));
+            }
+        }
+
+        /**
+         * Function that runs the Map tasks of every fragment on the calling thread.
+         * @return - the results, grouped by file.
+         * @throws Exception
+         */
+        List<List<MapResult>> map() throws Exception {
+            List<List<MapResult>> mapResults = new ArrayList<>();
+            JobMetrics metrics = new JobMetrics();
+            for (int i = 0; i < files.size(); i++) {
+                List<MapResult> fileResults = new ArrayList<>();
+                for (long start = 0; start < sizes.get(i); start += fragmentLength) {
+                    fileResults.add(new MapTask(files.get(i), start, fragmentLength, sizes.get(i),
+                            LongestWords.DEFAULT_CAPACITY, metrics).call());
+                }
+                mapResults.add(fileResults);
+            }
+            return mapResults;
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package jmh;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.BenchmarkParams;
+
+/**
+ * JMH benchmarks of the Map, Reduce and whole job stages over synthetic corpora, one per workload of Workloads. The
+ * corpus of a trial is generated by CorpusGenerator in its setup, unless it is already on disk, and is described by
+ * the parameters, which can be changed with -p, e.g. -p files=1 -p wordLength=geometric:6.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class MapReduceBenchmark {
+    @Param({"1", "100"})
+    public String files;
+
+    @Param({"1048576"})
+    public String fileSize;
+
+    @Param({"uniform:1-12"})
+    public String wordLength;
+
+    @Param({"65536"})
+    public String fragmentSize;
+
+    @Param({"4"})
+    public String workers;
+
+    /**
+     * Options of the job benchmark, separated by spaces, e.g. --engine=combiner.
+     */
+    @Param({""})
+    public String jobOptions;
+
+    /**
+     * Directory of the corpora, or empty for a directory in java.io.tmpdir.
+     */
+    @Param({""})
+    public String dir;
+
+    private Callable<Long> workload;
+
+    @Setup(Level.Trial)
+    public void setUp(BenchmarkParams params) throws Exception {
+        Map<String, String> parameters = new HashMap<>();
+        parameters.put("files", files);
+        parameters.put("fileSize", fileSize);
+        parameters.put("wordLength", wordLength);
+        parameters.put("fragmentSize", fragmentSize);
+        parameters.put("workers", workers);
+        parameters.put("jobOptions", jobOptions);
+        parameters.put("dir", dir);
+        workload = WorkloadLoader.prepare(params, parameters);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        ((AutoCloseable) workload).close();
+    }
+
+    @Benchmark
+    public long boundary() throws Exception {
+        return workload.call();
+    }
+
+    @Benchmark
+    public long tokenizeBytes() throws Exception {
+        return workload.call();
+    }
+
+    @Benchmark
+    public long tokenizeSwar() throws Exception {
+        return workload.call();
+    }
+
+    @Benchmark
+    public long tokenizeSplit() throws Exception {
+        return workload.call();
+    }
+
+    @Benchmark
+    public long map() throws Exception {
+        return workload.call();
+    }
+
+    @Benchmark
+    public long reduce() throws Exception {
+        return workload.call();
+    }
+
+    @Benchmark
+    public long combineLocked() throws Exception {
+        return workload.call();
+    }
+
+    @Benchmark
+    public long combineAtomic() throws Exception {
+        return workload.call();
+    }
+
+    @Benchmark
+    public long gunzipFirst() throws Exception {
+        return workload.call();
+    }
+
+    @Benchmark
+    public long bgzf() throws Exception {
+        return workload.call();
+    }
+
+    @Benchmark
+    public long gzipStream() throws Exception {
+        return workload.call();
+    }
+
+    @Benchmark
+    public long job() throws Exception {
+        return workload.call();
+    }
+}
@@ -0,0 +1,34 @@
+package jmh;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import org.openjdk.jmh.infra.BenchmarkParams;
+
+/**
+ * Loader of the workloads of the Workloads class of the default package, which cannot be named from this package.
+ */
+class WorkloadLoader {
+    /**
+     * Function that prepares the workload of a benchmark.
+     * @param params - parameters of the benchmark, giving the name of its method, which is the name of the workload.
+     * @param parameters - parameters of the corpus.
+     * @return - the workload, also AutoCloseable.
+     * @throws Exception
+     */
+    @SuppressWarnings("unchecked")
+    static Callable<Long> prepare(BenchmarkParams params, Map<String, String> parameters) throws Exception {
+        String benchmark = params.getBenchmark();
+        String name = benchmark.substring(benchmark.lastIndexOf('.') + 1);
+        try {
+            return (Callable<Long>) Class.forName("Workloads").getMethod("prepare", String.class, Map.class)
+                    .invoke(null, name, parameters);
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw e;
+        }
+    }
+}